@@ -2,6 +2,7 @@ package com.arkflame.flamecore;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -27,16 +28,21 @@ import com.arkflame.flamecore.materialapi.MaterialAPI;
 import com.arkflame.flamecore.menuapi.ItemBuilder;
 import com.arkflame.flamecore.menuapi.MenuAPI;
 import com.arkflame.flamecore.menuapi.MenuBuilder;
+import com.arkflame.flamecore.mysqlapi.MySQLAPI;
+import com.arkflame.flamecore.mysqlapi.PoolStats;
+import com.arkflame.flamecore.mysqlapi.StatementStats;
 import com.arkflame.flamecore.npcapi.Npc;
 import com.arkflame.flamecore.npcapi.NpcAPI;
 import com.arkflame.flamecore.schematicapi.Schematic;
 import com.arkflame.flamecore.schematicapi.SchematicAPI;
+import com.arkflame.flamecore.sqlapi.ExecutorStats;
 import com.arkflame.flamecore.titleapi.TitleAPI;
 
 import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -76,6 +82,7 @@ public class FlameCorePlugin extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         NpcAPI.despawnAll();
+        NpcAPI.shutdown();
     }
 
     private void registerFlameCoreCommand() {
@@ -321,6 +328,28 @@ public class FlameCorePlugin extends JavaPlugin implements Listener {
                                     NpcAPI.destroyAll();
                                     LangAPI.getMessage("commands.npc.removed_all").send(ctx.getSender());
                                 })))
+                .addSubCommand(Command.create("mysql")
+                        .setDescription("Shows connection pool and statement latency stats of every MySQLAPI.")
+                        .setExecutor(ctx -> sendMySQLStats(ctx.getSender()))
+                        .addSubCommand(Command.create("slowlog")
+                                .addArgument("millis", Integer.class, "The slow query threshold (0 to disable).")
+                                .setExecutor(ctx -> {
+                                    int millis = ctx.getArgument("millis");
+                                    if (millis < 0) {
+                                        LangAPI.getMessage("commands.mysql.invalid_threshold").send(ctx.getSender());
+                                        return;
+                                    }
+                                    MySQLAPI.getOpenInstances().forEach(api -> api.setSlowQueryThreshold(millis));
+                                    LangAPI.getMessage("commands.mysql.slowlog_set")
+                                            .with("millis", millis)
+                                            .with("count", MySQLAPI.getOpenInstances().size())
+                                            .send(ctx.getSender());
+                                }))
+                        .addSubCommand(Command.create("reset")
+                                .setExecutor(ctx -> {
+                                    MySQLAPI.getOpenInstances().forEach(MySQLAPI::resetStatementStats);
+                                    LangAPI.getMessage("commands.mysql.reset").send(ctx.getSender());
+                                })))
                 .addSubCommand(Command.create("fakeblock")
                         .requires(SenderType.PLAYER)
                         .setExecutor(ctx -> {
@@ -396,6 +425,48 @@ public class FlameCorePlugin extends JavaPlugin implements Listener {
                 .register();
     }
 
+    private void sendMySQLStats(CommandSender sender) {
+        if (MySQLAPI.getOpenInstances().isEmpty()) {
+            LangAPI.getMessage("commands.mysql.none").send(sender);
+            return;
+        }
+        for (MySQLAPI api : MySQLAPI.getOpenInstances()) {
+            PoolStats pool = api.getPoolStats();
+            ExecutorStats executor = api.getExecutorStats();
+            LangAPI.getMessage("commands.mysql.header").with("plugin", api.getPlugin().getName()).send(sender);
+            LangAPI.getMessage("commands.mysql.pool")
+                    .with("active", pool.getActiveConnections())
+                    .with("idle", pool.getIdleConnections())
+                    .with("total", pool.getTotalConnections())
+                    .with("max", pool.getMaximumPoolSize())
+                    .with("waiting", pool.getThreadsAwaitingConnection())
+                    .send(sender);
+            LangAPI.getMessage("commands.mysql.executor")
+                    .with("queue", executor.getQueueDepth())
+                    .with("capacity", executor.getQueueCapacity())
+                    .with("rejected", executor.getRejectedTasks())
+                    .with("wait", String.format("%.1f", executor.getAverageQueueWaitMillis()))
+                    .send(sender);
+            List<StatementStats> statements = api.getStatementStats();
+            if (statements.isEmpty()) {
+                LangAPI.getMessage("commands.mysql.no_statements").send(sender);
+            }
+            // Sorted by total time, so the first entries are the ones worth looking at.
+            for (StatementStats stats : statements.subList(0, Math.min(8, statements.size()))) {
+                LangAPI.getMessage("commands.mysql.statement")
+                        .with("type", stats.getType().name().toLowerCase())
+                        .with("entity", stats.getEntityName())
+                        .with("count", stats.getCount())
+                        .with("avg", String.format("%.1f", stats.getAverageMillis()))
+                        .with("p95", String.format("%.1f", stats.getP95Millis()))
+                        .with("p99", String.format("%.1f", stats.getP99Millis()))
+                        .with("max", String.format("%.1f", stats.getMaxMillis()))
+                        .with("slow", stats.getSlowCount())
+                        .send(sender);
+            }
+        }
+    }
+
     public void openExampleMenu(Player player) {
         // Animated beacon item
         ItemBuilder animatedItem = new ItemBuilder(MaterialAPI.getOrAir("BEACON"))
@@ -0,0 +1,472 @@
+package com.arkflame.flamecore.mongoapi;
+
+import com.arkflame.flamecore.sqlapi.ColumnCodec;
+import com.arkflame.flamecore.sqlapi.MappedEntity;
+import com.arkflame.flamecore.sqlapi.MappedField;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.arkflame.flamecore.sqlapi.annotations.Transient;
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maps entities to MongoDB documents, one document per entity in a collection named after the class.
+ * The primary key is stored as _id, and @StoreAsTable maps are embedded as sub-documents, so an entity
+ * is loaded with a single document fetch. Lists, nested objects and dates are stored as their BSON
+ * equivalents, and only types without one as binary in the engine's compact format. Entity classes are
+ * analyzed by the shared {@link MappedEntity} model, so only the BSON conversion lives here.
+ * This class is not intended for direct use. It is managed by MongoAPI.
+ */
+class DocumentMapper {
+    private static final String ID = "_id";
+    // Guards against reference cycles, which documents cannot represent.
+    private static final int MAX_DEPTH = 32;
+    private static final ClassValue<NestedType> nestedTypes = new ClassValue<NestedType>() {
+        @Override
+        protected NestedType computeValue(Class<?> type) {
+            return new NestedType(type);
+        }
+    };
+
+    private final MongoDatabase database;
+    private final Map<Class<?>, MappedEntity> entityCache = new ConcurrentHashMap<>();
+    // Classes whose @Index indexes were created.
+    private final Set<Class<?>> indexedClasses = ConcurrentHashMap.newKeySet();
+
+    DocumentMapper(MongoDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Upserts a batch of entities, which may be of different classes, with one unordered bulk write per collection.
+     */
+    void saveAll(Collection<?> entities) {
+        Map<MappedEntity, List<WriteModel<Document>>> writesByClass = new LinkedHashMap<>();
+        ReplaceOptions upsert = new ReplaceOptions().upsert(true);
+        for (Object entity : entities) {
+            MappedEntity mappedEntity = getMappedEntity(entity.getClass());
+            Document document = toDocument(mappedEntity, entity);
+            writesByClass.computeIfAbsent(mappedEntity, k -> new ArrayList<>())
+                    .add(new ReplaceOneModel<>(Filters.eq(ID, document.get(ID)), document, upsert));
+        }
+        for (Map.Entry<MappedEntity, List<WriteModel<Document>>> writes : writesByClass.entrySet()) {
+            // Unordered, so the server can apply the writes in parallel and one failure does not skip the rest.
+            collection(writes.getKey()).bulkWrite(writes.getValue(), new BulkWriteOptions().ordered(false));
+        }
+    }
+
+    <T> T loadById(Class<T> clazz, Object primaryKeyValue) {
+        MappedEntity mappedEntity = getMappedEntity(clazz);
+        Object id = toBson(mappedEntity.getPrimaryKey().getGenericType(), primaryKeyValue, 0);
+        Document document = collection(mappedEntity).find(Filters.eq(ID, id)).first();
+        return document == null ? null : clazz.cast(fromDocument(mappedEntity, document));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the entity has no field with the given name.
+     */
+    <T> List<T> loadAllBy(Class<T> clazz, String key, Object value) {
+        MappedEntity mappedEntity = getMappedEntity(clazz);
+        MappedField field = mappedEntity.getField(key);
+        String name = field == mappedEntity.getPrimaryKey() ? ID : field.getName();
+        List<T> results = new ArrayList<>();
+        for (Document document : collection(mappedEntity).find(Filters.eq(name, toBson(field.getGenericType(), value, 0)))) {
+            results.add(clazz.cast(fromDocument(mappedEntity, document)));
+        }
+        return results;
+    }
+
+    private MongoCollection<Document> collection(MappedEntity mappedEntity) {
+        MongoCollection<Document> collection = database.getCollection(mappedEntity.getTableName());
+        if (indexedClasses.add(mappedEntity.getEntityClass())) {
+            try {
+                // createIndex is a no-op for indexes that already exist.
+                for (Map.Entry<String, List<MappedField>> index : mappedEntity.getIndexes().entrySet()) {
+                    List<String> fieldNames = index.getValue().stream().map(MappedField::getName).collect(Collectors.toList());
+                    collection.createIndex(Indexes.ascending(fieldNames), new IndexOptions().name(index.getKey()));
+                }
+            } catch (RuntimeException e) {
+                indexedClasses.remove(mappedEntity.getEntityClass());
+                throw e;
+            }
+        }
+        return collection;
+    }
+
+    private Document toDocument(MappedEntity mappedEntity, Object entity) {
+        MappedField primaryKey = mappedEntity.getPrimaryKey();
+        Document document = new Document(ID, toBson(primaryKey.getGenericType(), primaryKey.get(entity), 0));
+        for (MappedField field : mappedEntity.getColumns()) {
+            document.put(field.getName(), toBson(field.getGenericType(), field.get(entity), 0));
+        }
+        // The key types of @StoreAsTable maps were checked by analyzeClass, so they become sub-documents.
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            document.put(mapField.getName(), toBson(mapField.getGenericType(), mapField.get(entity), 0));
+        }
+        return document;
+    }
+
+    private Object fromDocument(MappedEntity mappedEntity, Document document) {
+        Object instance = mappedEntity.newInstance();
+        MappedField primaryKey = mappedEntity.getPrimaryKey();
+        primaryKey.set(instance, fromBson(primaryKey.getGenericType(), document.get(ID)));
+        // Fields added after the document was written keep their initial value.
+        for (MappedField field : mappedEntity.getColumns()) {
+            if (!document.containsKey(field.getName())) continue;
+            field.set(instance, fromBson(field.getGenericType(), document.get(field.getName())));
+        }
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            if (!document.containsKey(mapField.getName())) continue;
+            Object value = document.get(mapField.getName());
+            mapField.set(instance, value instanceof Document
+                    ? readMap(mapField.newMap(), mapField.getGenericType(), (Document) value) : null);
+        }
+        return instance;
+    }
+
+    /**
+     * Converts a value to one the driver's default codecs can store. Lists, sets and arrays become BSON
+     * arrays, maps with string-like keys and nested objects become sub-documents, and Date and Instant
+     * become BSON dates, so all of them can be queried. Other types, such as byte arrays, BigDecimal or
+     * a subclass stored in a field of its superclass, are stored as binary in the engine's compact format.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object toBson(Type type, Object value, int depth) {
+        if (value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean) return value;
+        if (value instanceof Float) return ((Float) value).doubleValue();
+        if (value instanceof Short || value instanceof Byte) return ((Number) value).intValue();
+        if (value instanceof Character || value instanceof UUID) return value.toString();
+        if (value instanceof Enum) return ((Enum<?>) value).name();
+        // Subclasses such as java.sql.Timestamp are left to the compact format, which keeps their type.
+        if (value.getClass() == Date.class) return value;
+        if (value instanceof Instant) return Date.from((Instant) value);
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalArgumentException("Cannot store a value nested more than " + MAX_DEPTH + " levels deep, or one that refers to itself.");
+        }
+        Class<?> rawType = rawType(type);
+        if (value instanceof Collection) {
+            Type elementType = typeArgument(type, 0);
+            List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                list.add(toBson(elementType, element, depth + 1));
+            }
+            return list;
+        }
+        if (value.getClass().isArray() && !(value instanceof byte[])) {
+            Type componentType = componentType(type, value.getClass());
+            int length = Array.getLength(value);
+            List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                list.add(toBson(componentType, Array.get(value, i), depth + 1));
+            }
+            return list;
+        }
+        if (value instanceof Map && isKeyType(rawType(typeArgument(type, 0)))) {
+            Type valueType = typeArgument(type, 1);
+            Document document = new Document();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object key = entry.getKey();
+                document.put(escapeKey(key instanceof Enum ? ((Enum<?>) key).name() : String.valueOf(key)),
+                        toBson(valueType, entry.getValue(), depth + 1));
+            }
+            return document;
+        }
+        if (value.getClass() == rawType && isNestedType(rawType)) {
+            NestedType nested = nestedTypes.get(rawType);
+            Document document = new Document();
+            for (Field field : nested.fields) {
+                document.put(field.getName(), toBson(field.getGenericType(), nested.get(field, value), depth + 1));
+            }
+            return document;
+        }
+        return new Binary(ColumnCodec.compact((Class<Object>) rawType).encode(value));
+    }
+
+    /**
+     * Converts a stored value, or a sub-document key, back to the declared type.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object fromBson(Type type, Object value) {
+        if (value == null) return null;
+        Class<?> rawType = rawType(type);
+        if (value instanceof Binary) return ColumnCodec.compact(rawType).decode(((Binary) value).getData());
+        if (value instanceof Date) return rawType == Instant.class ? ((Date) value).toInstant() : value;
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            if (rawType.isArray()) {
+                Type componentType = componentType(type, rawType);
+                Object array = Array.newInstance(rawType.getComponentType(), list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    Object element = fromBson(componentType, list.get(i));
+                    // Primitive elements stored as null keep their default value.
+                    if (element != null) Array.set(array, i, element);
+                }
+                return array;
+            }
+            Type elementType = typeArgument(type, 0);
+            Collection<Object> collection = newCollection(rawType, list.size());
+            for (Object element : list) {
+                collection.add(fromBson(elementType, element));
+            }
+            return collection;
+        }
+        if (value instanceof Document) {
+            Document document = (Document) value;
+            if (rawType == Object.class || Map.class.isAssignableFrom(rawType)) {
+                return readMap(newMap(rawType, document.size()), type, document);
+            }
+            NestedType nested = nestedTypes.get(rawType);
+            Object instance = nested.newInstance();
+            // Fields added after the document was written keep their initial value, and removed ones are ignored.
+            for (Field field : nested.fields) {
+                if (!document.containsKey(field.getName())) continue;
+                Object fieldValue = fromBson(field.getGenericType(), document.get(field.getName()));
+                if (fieldValue != null || !field.getType().isPrimitive()) {
+                    nested.set(field, instance, fieldValue);
+                }
+            }
+            return instance;
+        }
+        if (value instanceof String) {
+            String text = (String) value;
+            if (rawType == UUID.class) return UUID.fromString(text);
+            if (rawType.isEnum()) return Enum.valueOf((Class) rawType, text);
+            if (rawType == char.class || rawType == Character.class) return text.isEmpty() ? null : text.charAt(0);
+            if (rawType == int.class || rawType == Integer.class) return Integer.valueOf(text);
+            if (rawType == long.class || rawType == Long.class) return Long.valueOf(text);
+            if (rawType == double.class || rawType == Double.class) return Double.valueOf(text);
+            if (rawType == boolean.class || rawType == Boolean.class) return Boolean.valueOf(text);
+            return text;
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (rawType == int.class || rawType == Integer.class) return number.intValue();
+            if (rawType == long.class || rawType == Long.class) return number.longValue();
+            if (rawType == double.class || rawType == Double.class) return number.doubleValue();
+            if (rawType == float.class || rawType == Float.class) return number.floatValue();
+            if (rawType == short.class || rawType == Short.class) return number.shortValue();
+            if (rawType == byte.class || rawType == Byte.class) return number.byteValue();
+        }
+        return value;
+    }
+
+    private static Map<Object, Object> readMap(Map<Object, Object> map, Type mapType, Document document) {
+        Type keyType = typeArgument(mapType, 0);
+        Type valueType = typeArgument(mapType, 1);
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            map.put(fromBson(keyType, unescapeKey(entry.getKey())), fromBson(valueType, entry.getValue()));
+        }
+        return map;
+    }
+
+    /**
+     * Escapes the characters that MongoDB does not allow in field names, or only in some positions:
+     * dots and dollar signs. Percent signs are escaped too, so {@link #unescapeKey(String)} is exact.
+     */
+    private static String escapeKey(String key) {
+        if (key.indexOf('.') < 0 && key.indexOf('$') < 0 && key.indexOf('%') < 0) return key;
+        StringBuilder escaped = new StringBuilder(key.length() + 8);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%') escaped.append("%25");
+            else if (c == '.') escaped.append("%2E");
+            else if (c == '$') escaped.append("%24");
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static String unescapeKey(String key) {
+        if (key.indexOf('%') < 0) return key;
+        StringBuilder unescaped = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%' && i + 2 < key.length()) {
+                unescaped.append((char) Integer.parseInt(key.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static boolean isNestedType(Class<?> type) {
+        String name = type.getName();
+        return !type.isPrimitive() && !type.isArray() && !type.isEnum() && !type.isInterface()
+                && !Modifier.isAbstract(type.getModifiers()) && !name.startsWith("java.") && !name.startsWith("javax.");
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return rawType(((ParameterizedType) type).getRawType());
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType) return rawType(((WildcardType) type).getUpperBounds()[0]);
+        if (type instanceof TypeVariable) return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        return Object.class;
+    }
+
+    /**
+     * @return The type argument of a declared collection or map type, or Object if it has none.
+     */
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) return arguments[index];
+        }
+        return Object.class;
+    }
+
+    private static Type componentType(Type type, Class<?> arrayType) {
+        return type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : arrayType.getComponentType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> declared, int size) {
+        if (Collection.class.isAssignableFrom(declared) && !declared.isInterface() && !Modifier.isAbstract(declared.getModifiers())) {
+            return (Collection<Object>) newInstance(declared);
+        }
+        if (SortedSet.class.isAssignableFrom(declared)) return new TreeSet<>();
+        return Set.class.isAssignableFrom(declared) ? new LinkedHashSet<>(size * 2) : new ArrayList<>(size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> newMap(Class<?> declared, int size) {
+        if (Map.class.isAssignableFrom(declared) && !declared.isInterface() && !Modifier.isAbstract(declared.getModifiers())) {
+            return (Map<Object, Object>) newInstance(declared);
+        }
+        if (SortedMap.class.isAssignableFrom(declared)) return new TreeMap<>();
+        return new LinkedHashMap<>(size * 2);
+    }
+
+    private static Object newInstance(Class<?> clazz) {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create a " + clazz.getSimpleName(), e);
+        }
+    }
+
+    private MappedEntity getMappedEntity(Class<?> clazz) {
+        return entityCache.computeIfAbsent(clazz, this::analyzeClass);
+    }
+
+    /**
+     * Checks the parts of the shared model that a document cannot store.
+     */
+    private MappedEntity analyzeClass(Class<?> clazz) {
+        MappedEntity mappedEntity = MappedEntity.analyze(clazz);
+        // Document field names cannot start with $ or contain dots, which Java names never do.
+        List<MappedField> fields = new ArrayList<>(mappedEntity.getColumns());
+        fields.addAll(mappedEntity.getMapFields());
+        fields.add(mappedEntity.getPrimaryKey());
+        for (MappedField field : fields) {
+            if (field.getName().equals(ID)) {
+                throw new IllegalStateException("Entity " + clazz.getSimpleName() + " must not have a field named _id.");
+            }
+        }
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            if (!isKeyType(mapField.getKeyType())) {
+                throw new IllegalStateException("Map field " + clazz.getSimpleName() + "." + mapField.getName()
+                        + " must have string, number, boolean, UUID or enum keys to be stored as a sub-document.");
+            }
+        }
+        return mappedEntity;
+    }
+
+    private static boolean isKeyType(Class<?> type) {
+        return type == String.class || type == UUID.class || type.isEnum() || type == Integer.class || type == Long.class
+                || type == Double.class || type == Boolean.class || type == Character.class;
+    }
+
+    /**
+     * The stored fields and no-argument constructor of a class stored as a sub-document, resolved once per class.
+     * Like the compact format, it skips static, transient and @Transient fields.
+     */
+    private static final class NestedType {
+        private final List<Field> fields = new ArrayList<>();
+        private final Constructor<?> constructor;
+
+        NestedType(Class<?> clazz) {
+            Set<String> names = new HashSet<>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+                    if (MappedEntity.findAnnotation(field, Transient.class) != null) continue;
+                    // A subclass field hides a superclass field of the same name.
+                    if (!names.add(field.getName())) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            try {
+                this.constructor = clazz.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(clazz.getSimpleName() + " needs a no-argument constructor to be stored as a sub-document.", e);
+            }
+        }
+
+        Object newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create a " + constructor.getDeclaringClass().getSimpleName(), e);
+            }
+        }
+
+        Object get(Field field, Object instance) {
+            try {
+                return field.get(instance);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void set(Field field, Object instance, Object value) {
+            try {
+                field.set(instance, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.arkflame.flamecore.mongoapi;
+
+import com.arkflame.flamecore.sqlapi.DatabaseExecutor;
+import com.arkflame.flamecore.sqlapi.ExecutorStats;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main entry point for the MongoDB Database API.
+ * Stores each entity as one document, using the same annotations and methods as MySQLAPI.
+ */
+public class MongoAPI {
+    private final JavaPlugin plugin;
+    private final MongoClient client;
+    private final DocumentMapper documentMapper;
+    private final DatabaseExecutor executor;
+
+    public MongoAPI(JavaPlugin plugin, MongoConfig config) {
+        this.plugin = plugin;
+        this.client = MongoClients.create(config.getConnectionString());
+        this.documentMapper = new DocumentMapper(client.getDatabase(config.getDatabase()));
+        this.executor = new DatabaseExecutor("FlameCore-Mongo", config.getThreads(), config.getQueueCapacity(), config.getBackpressurePolicy());
+    }
+
+    /**
+     * Saves an object to the database asynchronously, replacing the document with the same primary key.
+     */
+    public CompletableFuture<Void> save(Object object) {
+        return saveAll(Collections.singletonList(object));
+    }
+
+    /**
+     * Saves a batch of objects asynchronously with one bulk write per collection.
+     * The future completes exceptionally if any of them could not be written; the others are still saved.
+     */
+    public CompletableFuture<Void> saveAll(Collection<?> objects) {
+        return executor.run(() -> documentMapper.saveAll(objects));
+    }
+
+    /**
+     * Loads a single object from the database by its primary key.
+     */
+    public <T> CompletableFuture<T> loadById(Class<T> clazz, Object primaryKeyValue) {
+        return executor.supply(() -> documentMapper.loadById(clazz, primaryKeyValue));
+    }
+
+    /**
+     * Loads a list of objects from the database that match a specific key-value pair.
+     * Mark fields that are looked up often with {@code @Index}.
+     */
+    public <T> CompletableFuture<List<T>> loadAllBy(Class<T> clazz, String key, Object value) {
+        return executor.supply(() -> documentMapper.loadAllBy(clazz, key, value));
+    }
+
+    /**
+     * @return The database executor's queue depth, rejection count and latency counters.
+     */
+    public ExecutorStats getExecutorStats() {
+        return executor.stats();
+    }
+
+    /**
+     * Waits for queued operations and closes the MongoDB client. Call this in your plugin's onDisable.
+     */
+    public void shutdown() {
+        executor.shutdown(30, TimeUnit.SECONDS);
+        client.close();
+    }
+}
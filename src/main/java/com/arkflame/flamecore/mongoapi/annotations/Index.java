@@ -0,0 +1,18 @@
+package com.arkflame.flamecore.mongoapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Creates a secondary index on the field the first time its collection is used.
+ * Fields that share an index name form one composite index, in declaration order.
+ * If no name is given, the index covers this field only.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@com.arkflame.flamecore.sqlapi.annotations.Index
+@Target(ElementType.FIELD)
+public @interface Index {
+    String value() default "";
+}
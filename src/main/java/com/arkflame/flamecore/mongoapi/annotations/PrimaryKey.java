@@ -0,0 +1,11 @@
+package com.arkflame.flamecore.mongoapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@com.arkflame.flamecore.sqlapi.annotations.PrimaryKey
+@Target(ElementType.FIELD)
+public @interface PrimaryKey {}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded read-through cache for entities loaded by primary key.
+ * Entries are keyed by (class, primary key), evicted in least-recently-used order once the
+ * maximum size is reached, and expire a fixed time after they were written.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class EntityCache {
+    private final int maximumSize;
+    private final long expireAfterWriteMillis;
+    private final LinkedHashMap<Key, CachedEntity> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    EntityCache(int maximumSize, long expireAfterWriteMillis) {
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        // Access order turns iteration order into LRU order.
+        this.entries = new LinkedHashMap<Key, CachedEntity>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedEntity> eldest) {
+                if (size() > EntityCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached entity, or null on a miss. Expired entries count as misses.
+     */
+    synchronized Object get(Class<?> clazz, Object primaryKeyValue) {
+        Key key = new Key(clazz, primaryKeyValue);
+        CachedEntity entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.entity;
+    }
+
+    /**
+     * Stores an entity that was just saved, replacing any older cached instance.
+     */
+    synchronized void put(Class<?> clazz, Object primaryKeyValue, Object entity) {
+        entries.put(new Key(clazz, primaryKeyValue), new CachedEntity(entity, System.currentTimeMillis() + expireAfterWriteMillis));
+    }
+
+    /**
+     * Stores an entity that was loaded from the database, unless a save stored a newer one meanwhile.
+     */
+    synchronized void putLoaded(Class<?> clazz, Object primaryKeyValue, Object entity) {
+        Key key = new Key(clazz, primaryKeyValue);
+        CachedEntity existing = entries.get(key);
+        if (existing == null || existing.isExpired(System.currentTimeMillis())) {
+            entries.put(key, new CachedEntity(entity, System.currentTimeMillis() + expireAfterWriteMillis));
+        }
+    }
+
+    synchronized void invalidate(Class<?> clazz, Object primaryKeyValue) {
+        entries.remove(new Key(clazz, primaryKeyValue));
+    }
+
+    synchronized void invalidateAll(Class<?> clazz) {
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().clazz == clazz) {
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size());
+    }
+
+    private static final class Key {
+        private final Class<?> clazz;
+        private final Object primaryKeyValue;
+
+        Key(Class<?> clazz, Object primaryKeyValue) {
+            this.clazz = clazz;
+            this.primaryKeyValue = primaryKeyValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return clazz == other.clazz && Objects.equals(primaryKeyValue, other.primaryKeyValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * clazz.hashCode() + Objects.hashCode(primaryKeyValue);
+        }
+    }
+
+    private static final class CachedEntity {
+        private final Object entity;
+        private final long expiresAt;
+
+        CachedEntity(Object entity, long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A RedisClient backed by a Jedis connection pool. Subscriptions run on their own daemon thread
+ * and reconnect if the connection is lost.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class JedisRedisClient implements RedisClient {
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final JedisPool pool;
+    private final Logger logger;
+    private volatile boolean closed;
+    private volatile BinaryJedisPubSub pubSub;
+
+    JedisRedisClient(RedisConfig config, Logger logger) {
+        this.pool = new JedisPool(new JedisPoolConfig(), config.getHost(), config.getPort(), 2000, config.getPassword());
+        this.logger = logger;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        try (Jedis jedis = pool.getResource()) {
+            return jedis.get(key);
+        }
+    }
+
+    @Override
+    public List<byte[]> mget(byte[]... keys) {
+        try (Jedis jedis = pool.getResource()) {
+            return jedis.mget(keys);
+        }
+    }
+
+    @Override
+    public void setex(byte[] key, long seconds, byte[] value) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.setex(key, seconds, value);
+        }
+    }
+
+    @Override
+    public void del(byte[]... keys) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.del(keys);
+        }
+    }
+
+    @Override
+    public void publish(byte[] channel, byte[] message) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.publish(channel, message);
+        }
+    }
+
+    @Override
+    public void subscribe(byte[] channel, Consumer<byte[]> listener) {
+        Thread thread = new Thread(() -> {
+            while (!closed) {
+                BinaryJedisPubSub subscription = new BinaryJedisPubSub() {
+                    @Override
+                    public void onMessage(byte[] messageChannel, byte[] message) {
+                        listener.accept(message);
+                    }
+                };
+                pubSub = subscription;
+                // subscribe blocks until the subscription is cancelled or the connection fails.
+                try (Jedis jedis = pool.getResource()) {
+                    jedis.subscribe(subscription, channel);
+                } catch (RuntimeException e) {
+                    if (closed) return;
+                    logger.log(Level.WARNING, "Lost the Redis cache invalidation subscription. Retrying in "
+                            + RECONNECT_DELAY_MILLIS / 1000 + " seconds.", e);
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }, "FlameCore-Redis-Subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        BinaryJedisPubSub subscription = pubSub;
+        if (subscription != null && subscription.isSubscribed()) {
+            subscription.unsubscribe();
+        }
+        pool.close();
+    }
+}
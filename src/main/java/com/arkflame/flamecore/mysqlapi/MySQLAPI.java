@@ -2,82 +2,494 @@ package com.arkflame.flamecore.mysqlapi;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.arkflame.flamecore.sqlapi.ColumnCodec;
+import com.arkflame.flamecore.sqlapi.DatabaseExecutor;
+import com.arkflame.flamecore.sqlapi.EntityMapper;
+import com.arkflame.flamecore.sqlapi.ExecutorStats;
+import com.arkflame.flamecore.sqlapi.Migration;
+import com.arkflame.flamecore.sqlapi.Query;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 
 /**
  * Main entry point for the MySQL Database API.
  * Handles connection pooling and provides high-level methods for data persistence with MySQL.
  */
 public class MySQLAPI {
+    // Rows fetched per round trip by the streaming methods unless a fetch size is given.
+    private static final int DEFAULT_FETCH_SIZE = 500;
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 1000;
+    // Instances that have not been shut down, for server-wide diagnostics.
+    private static final Set<MySQLAPI> OPEN_INSTANCES = ConcurrentHashMap.newKeySet();
+
     private final JavaPlugin plugin;
     private final HikariDataSource dataSource;
+    private final HikariDataSource streamDataSource;
     private final EntityMapper entityMapper;
+    private final Map<Integer, Migration> migrations = new TreeMap<>();
+    private final DatabaseExecutor executor;
+    private final QueryMetrics queryMetrics;
+    private final int poolSize;
+    private final Map<Class<?>, WriteBehindCache> writeBehindCaches = new ConcurrentHashMap<>();
+    private volatile EntityCache readCache;
+    private volatile SecondLevelCache sharedCache;
 
     public MySQLAPI(JavaPlugin plugin, MySQLConfig config) {
         this.plugin = plugin;
-        this.entityMapper = new EntityMapper(this);
 
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getHost() + ":" + config.getPort() + "/" + config.getDatabase());
-        hikariConfig.setUsername(config.getUser());
-        hikariConfig.setPassword(config.getPassword());
-        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        hikariConfig.setMaximumPoolSize(10);
-        hikariConfig.setConnectionTimeout(30000);
-        hikariConfig.addDataSourceProperty("useUnicode", "true");
-        hikariConfig.addDataSourceProperty("characterEncoding", "utf8");
+        this.dataSource = new HikariDataSource(poolConfig(config));
+        // Streamed queries fetch rows in chunks through server-side cursors, while map fields are loaded on the
+        // same connection. Cursor fetch turns every statement into a server-side prepared statement, so only
+        // this separate, small pool uses it. Its connections are closed once idle, so it costs little while nothing streams.
+        HikariConfig streamConfig = poolConfig(config);
+        streamConfig.addDataSourceProperty("useCursorFetch", "true");
+        streamConfig.setMaximumPoolSize(config.getStreamPoolSize());
+        streamConfig.setMinimumIdle(0);
+        this.streamDataSource = new HikariDataSource(streamConfig);
+        this.entityMapper = new EntityMapper(new MySQLDialect(), dataSource, dataSource, streamDataSource);
+        this.queryMetrics = new QueryMetrics(plugin.getLogger());
+        queryMetrics.setSlowThresholdMillis(DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS);
+        entityMapper.setStatementListener(queryMetrics);
+        this.poolSize = config.getPoolSize();
+        // One worker per pooled connection, so queued operations never wait on the pool itself.
+        this.executor = new DatabaseExecutor("FlameCore-MySQL", config.getPoolSize(), config.getQueueCapacity(), config.getBackpressurePolicy());
+        OPEN_INSTANCES.add(this);
+    }
 
-        this.dataSource = new HikariDataSource(hikariConfig);
+    /**
+     * @return Every MySQLAPI that has not been shut down, across all plugins, e.g. for a diagnostics command.
+     */
+    public static Collection<MySQLAPI> getOpenInstances() {
+        return Collections.unmodifiableSet(OPEN_INSTANCES);
+    }
+
+    /**
+     * @return The plugin that owns this instance.
+     */
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Registers a versioned migration to be applied by {@link #migrate(Class[])}.
+     * @throws IllegalArgumentException if a migration with the same version is already registered.
+     */
+    public synchronized void addMigration(Migration migration) {
+        if (migrations.putIfAbsent(migration.getVersion(), migration) != null) {
+            throw new IllegalArgumentException("A migration with version " + migration.getVersion() + " is already registered.");
+        }
+    }
+
+    /**
+     * Stores fields, map keys and map values of a type with a codec, in a binary column.
+     * Call this before {@link #migrate(Class[])}. For example, {@code registerCodec(UUID.class, ColumnCodec.binaryUuid())}
+     * stores UUIDs in 16 bytes instead of 36 characters.
+     * @throws IllegalStateException if migrate was already called.
+     */
+    public <T> void registerCodec(Class<T> type, ColumnCodec<T> codec) {
+        entityMapper.registerCodec(type, codec);
+    }
+
+    /**
+     * Brings the schema up to date. Call this once in onEnable, before saving any objects.
+     * Registered migrations that have not been applied yet run in version order, then the tables, columns
+     * and indexes of the given entity classes are created or updated. Saves never change the schema, so
+     * only classes passed here can be saved. With the Redis cache enabled, the classes are also checked
+     * to be storable in Redis.
+     * @return A future that completes once the schema is up to date, or exceptionally if a migration failed.
+     */
+    public CompletableFuture<Void> migrate(Class<?>... entityClasses) {
+        List<Migration> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(migrations.values());
+        }
+        SecondLevelCache shared = sharedCache;
+        return supply(() -> {
+            if (shared != null) {
+                for (Class<?> entityClass : entityClasses) {
+                    entityMapper.checkSerializable(entityClass);
+                }
+            }
+            for (Migration migration : entityMapper.migrate(plugin.getName(), pending, Arrays.asList(entityClasses))) {
+                plugin.getLogger().info("Applied schema migration " + migration.getVersion() + ": " + migration.getDescription());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Enables write-behind caching for an entity class.
+     * Saves of this class are buffered in memory and written in batches, so repeated saves of the
+     * same primary key between flushes result in a single write. Buffered entities are flushed
+     * synchronously by {@link #shutdown()}.
+     * @param clazz The entity class to buffer.
+     * @param flushIntervalTicks How often dirty entities are written, in server ticks.
+     * @param maxDirtyCount The number of dirty entities that triggers an early flush.
+     */
+    public void enableWriteBehind(Class<?> clazz, long flushIntervalTicks, int maxDirtyCount) {
+        if (flushIntervalTicks <= 0 || maxDirtyCount <= 0) {
+            throw new IllegalArgumentException("Flush interval and max dirty count must be positive.");
+        }
+        writeBehindCaches.computeIfAbsent(clazz, c -> new WriteBehindCache(plugin, entityMapper, executor, c, flushIntervalTicks, maxDirtyCount,
+                keys -> evictShared(c, keys)));
     }
 
     /**
-     * Gets a connection from the pool. Use with try-with-resources.
-     * This is an internal method for the EntityMapper.
-     * @return A database connection.
-     * @throws SQLException if a connection cannot be obtained.
+     * Enables a bounded read-through cache for {@link #loadById(Class, Object)}.
+     * Loaded entities are kept in memory keyed by class and primary key, so repeated lookups of hot
+     * rows do not query the database. Saving an entity through this API replaces its cached copy once the write succeeds, and drops it if the write fails.
+     * Cached instances are shared between callers.
+     * @param maximumSize The maximum number of cached entities. The least recently used are evicted first.
+     * @param expireAfterWriteSeconds How long an entity stays cached after it was loaded or saved.
      */
-    Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    public void enableReadCache(int maximumSize, long expireAfterWriteSeconds) {
+        if (maximumSize <= 0 || expireAfterWriteSeconds <= 0) {
+            throw new IllegalArgumentException("Maximum size and expiry must be positive.");
+        }
+        this.readCache = new EntityCache(maximumSize, expireAfterWriteSeconds * 1000L);
+    }
+
+    /**
+     * Enables a Redis cache shared by every server with the same namespace, in front of
+     * {@link #loadById(Class, Object)}. Loads check the read cache first, then Redis, then the database.
+     * Saving or invalidating an entity deletes its Redis copy and tells the other servers to drop it from
+     * their read caches. Requires the Jedis library at runtime.
+     */
+    public void enableRedisCache(RedisConfig config) {
+        enableRedisCache(new JedisRedisClient(config, plugin.getLogger()), config);
+    }
+
+    /**
+     * Enables the shared Redis cache with a custom client.
+     * Only the namespace and expiry of the config are used.
+     * @see #enableRedisCache(RedisConfig)
+     */
+    public void enableRedisCache(RedisClient client, RedisConfig config) {
+        if (sharedCache != null) {
+            throw new IllegalStateException("The Redis cache is already enabled.");
+        }
+        this.sharedCache = new SecondLevelCache(client, config, entityMapper, plugin.getLogger(), this::invalidateLocal);
+    }
+
+    /**
+     * @return The Redis cache hit/miss counters, or null if the Redis cache is not enabled.
+     */
+    public CacheStats getRedisCacheStats() {
+        SecondLevelCache shared = sharedCache;
+        return shared == null ? null : shared.stats();
+    }
+
+    /**
+     * @return The read cache hit/miss counters, or null if the read cache is not enabled.
+     */
+    public CacheStats getReadCacheStats() {
+        EntityCache cache = readCache;
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * Drops a cached entity, e.g. after the row was changed outside of this API.
+     * With the Redis cache enabled, the shared copy and the other servers' cached copies are dropped too.
+     */
+    public void invalidate(Class<?> clazz, Object primaryKeyValue) {
+        invalidateLocal(clazz, Collections.singletonList(primaryKeyValue));
+        SecondLevelCache shared = sharedCache;
+        if (shared != null) {
+            executor.run(() -> shared.evict(clazz, Collections.singletonList(primaryKeyValue)));
+        }
+    }
+
+    /**
+     * Drops every cached entity of a class. With the Redis cache enabled, the other servers drop theirs
+     * too, but copies already in Redis are kept until they expire.
+     */
+    public void invalidateAll(Class<?> clazz) {
+        invalidateLocal(clazz, null);
+        SecondLevelCache shared = sharedCache;
+        if (shared != null) {
+            executor.run(() -> shared.evictAll(clazz));
+        }
+    }
+
+    /**
+     * Drops entities from this server's read cache, or every entity of the class if the keys are null.
+     */
+    private void invalidateLocal(Class<?> clazz, List<Object> primaryKeyValues) {
+        EntityCache cache = readCache;
+        if (cache == null) return;
+        if (primaryKeyValues == null) {
+            cache.invalidateAll(clazz);
+        } else {
+            primaryKeyValues.forEach(pk -> cache.invalidate(clazz, pk));
+        }
+    }
+
+    private void evictShared(Class<?> clazz, List<Object> primaryKeyValues) {
+        SecondLevelCache shared = sharedCache;
+        if (shared != null) {
+            shared.evict(clazz, primaryKeyValues);
+        }
     }
 
     /**
      * Saves an object to the database asynchronously.
-     * This will automatically create/update the table schema and then insert or update the data.
+     * The object is inserted or updated by its primary key. Its class must have been passed to
+     * {@link #migrate(Class[])}, otherwise the future completes exceptionally with an IllegalStateException.
+     * Failed saves are also logged.
+     * Its @StoreAsTable map fields are replaced with change-tracking maps before this method returns,
+     * so re-read those fields instead of keeping references to the old maps.
+     * If write-behind is enabled for the object's class, the returned future completes when the
+     * buffered write is flushed.
      */
     public CompletableFuture<Void> save(Object object) {
-        return CompletableFuture.runAsync(() -> entityMapper.save(object),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        // Map fields are swapped for tracking maps here, on the caller's thread, never by the executor.
+        entityMapper.trackMaps(object);
+        WriteBehindCache writeBehind = writeBehindCaches.get(object.getClass());
+        CompletableFuture<Void> saved = writeBehind != null ? writeBehind.markDirty(object) : write(object);
+        EntityCache cache = readCache;
+        if (cache == null) {
+            return saved;
+        }
+        Object pkValue = entityMapper.getPrimaryKeyValue(object);
+        // Only cache what was written; a failed save must not be served to later loads.
+        return saved.whenComplete((result, error) -> {
+            if (error == null) {
+                cache.put(object.getClass(), pkValue, object);
+            } else {
+                cache.invalidate(object.getClass(), pkValue);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> write(Object object) {
+        return supply(() -> {
+            try {
+                entityMapper.save(object);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to save " + object.getClass().getSimpleName() + " to MySQL.", e);
+                throw e;
+            }
+            evictShared(object.getClass(), Collections.singletonList(entityMapper.getPrimaryKeyValue(object)));
+            return null;
+        });
+    }
+
+    /**
+     * Writes all buffered write-behind entities asynchronously.
+     */
+    public CompletableFuture<Void> flush() {
+        return executor.run(() -> writeBehindCaches.values().forEach(WriteBehindCache::flush));
     }
 
     /**
      * Loads a single object from the database by its primary key.
+     * The future completes with null if there is no such row, and exceptionally if the query fails.
+     * An entity that is still buffered for write-behind, or held by the read cache, is returned
+     * without querying the database. With the Redis cache enabled, it is checked before the database.
      */
     public <T> CompletableFuture<T> loadById(Class<T> clazz, Object primaryKeyValue) {
-        return CompletableFuture.supplyAsync(() -> entityMapper.loadById(clazz, primaryKeyValue),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        WriteBehindCache writeBehind = writeBehindCaches.get(clazz);
+        if (writeBehind != null) {
+            Object pending = writeBehind.getPending(primaryKeyValue);
+            if (pending != null) {
+                return CompletableFuture.completedFuture(clazz.cast(pending));
+            }
+        }
+        EntityCache cache = readCache;
+        if (cache != null) {
+            Object cached = cache.get(clazz, primaryKeyValue);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(clazz.cast(cached));
+            }
+        }
+        SecondLevelCache shared = sharedCache;
+        return supply(() -> {
+            T loaded = shared == null
+                    ? entityMapper.loadById(clazz, primaryKeyValue)
+                    : shared.load(clazz, primaryKeyValue, () -> entityMapper.loadById(clazz, primaryKeyValue));
+            if (cache != null && loaded != null) {
+                cache.putLoaded(clazz, primaryKeyValue, loaded);
+            }
+            return loaded;
+        });
     }
 
     /**
      * Loads a list of objects from the database that match a specific key-value pair.
+     * The future completes exceptionally if the query fails.
      */
     public <T> CompletableFuture<List<T>> loadAllBy(Class<T> clazz, String key, Object value) {
-        return CompletableFuture.supplyAsync(() -> entityMapper.loadAllBy(clazz, key, value),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        return supply(() -> entityMapper.loadAllBy(clazz, key, value));
+    }
+
+    /**
+     * Streams every object of a class to a callback instead of loading them into a list.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAll(Class<T> clazz, Consumer<? super T> consumer) {
+        return stream(clazz, null, null, DEFAULT_FETCH_SIZE, consumer);
+    }
+
+    /**
+     * Streams every object of a class to a callback, fetching the given number of rows per round trip.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAll(Class<T> clazz, int fetchSize, Consumer<? super T> consumer) {
+        return stream(clazz, null, null, fetchSize, consumer);
+    }
+
+    /**
+     * Streams the objects that match a specific key-value pair to a callback.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAllBy(Class<T> clazz, String key, Object value, Consumer<? super T> consumer) {
+        return stream(clazz, key, value, DEFAULT_FETCH_SIZE, consumer);
+    }
+
+    /**
+     * Streams the objects that match a specific key-value pair to a callback instead of loading them into a list.
+     * Rows are read from the database in chunks of {@code fetchSize} and mapped one at a time, so a large
+     * table can be processed without holding all of it in memory. The callback runs on a database thread,
+     * and the connection is held until the last row has been handled, so keep the callback short.
+     * Streamed entities bypass the read cache and write-behind buffers.
+     * @return A future that completes once every row was passed to the callback, or exceptionally if the
+     *         query or the callback failed.
+     */
+    public <T> CompletableFuture<Void> streamAllBy(Class<T> clazz, String key, Object value, int fetchSize, Consumer<? super T> consumer) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null. Use streamAll to stream every row.");
+        }
+        return stream(clazz, key, value, fetchSize, consumer);
+    }
+
+    private <T> CompletableFuture<Void> stream(Class<T> clazz, String key, Object value, int fetchSize, Consumer<? super T> consumer) {
+        return supply(() -> {
+            entityMapper.stream(clazz, key, value, fetchSize, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Starts a query builder for an entity class, for filtered, ordered or paginated loads.
+     * Like streamed loads, query results bypass the read cache and write-behind buffers.
+     */
+    public <T> Query<T> query(Class<T> clazz) {
+        return entityMapper.query(clazz, this::supply);
+    }
+
+    private <R> CompletableFuture<R> supply(Callable<R> task) {
+        return executor.supply(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return The database executor's queue depth, rejection count and latency counters.
+     */
+    public ExecutorStats getExecutorStats() {
+        return executor.stats();
+    }
+
+    /**
+     * @return The number of active, idle and total pooled connections, and the threads waiting for one.
+     *         Waiting threads mean the pool is exhausted.
+     */
+    public PoolStats getPoolStats() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return new PoolStats(0, 0, 0, poolSize, 0);
+        }
+        return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(), poolSize,
+                pool.getThreadsAwaitingConnection());
+    }
+
+    /**
+     * @return Latency histograms per statement type and entity class since startup or the last reset,
+     *         slowest in total first. Times include waiting for a pooled connection.
+     */
+    public List<StatementStats> getStatementStats() {
+        return queryMetrics.snapshot();
+    }
+
+    /**
+     * Clears the statement latency histograms.
+     */
+    public void resetStatementStats() {
+        queryMetrics.reset();
+    }
+
+    /**
+     * Logs a warning for every save, load, query or schema change that takes at least this long, with its
+     * entity, row count and SQL. Warnings are limited to one per second. The default is 1000 milliseconds.
+     * @param thresholdMillis The threshold, or 0 to disable slow statement logging.
+     */
+    public void setSlowQueryThreshold(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("Slow query threshold cannot be negative.");
+        }
+        queryMetrics.setSlowThresholdMillis(thresholdMillis);
+    }
+
+    public long getSlowQueryThreshold() {
+        return queryMetrics.getSlowThresholdMillis();
     }
 
     /**
-     * Shuts down the database connection pool. Call this in your plugin's onDisable.
+     * Flushes any write-behind entities and shuts down the database connection pool and Redis cache.
+     * Call this in your plugin's onDisable.
      */
     public void shutdown() {
+        OPEN_INSTANCES.remove(this);
+        // Let queued operations finish first, then flush what they left dirty on this thread.
+        executor.shutdown(30, TimeUnit.SECONDS);
+        writeBehindCaches.values().forEach(WriteBehindCache::close);
+        writeBehindCaches.clear();
+        SecondLevelCache shared = sharedCache;
+        if (shared != null) {
+            shared.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
+        if (streamDataSource != null && !streamDataSource.isClosed()) {
+            streamDataSource.close();
+        }
+    }
+
+    private static HikariConfig poolConfig(MySQLConfig config) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getHost() + ":" + config.getPort() + "/" + config.getDatabase());
+        hikariConfig.setUsername(config.getUser());
+        hikariConfig.setPassword(config.getPassword());
+        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // Lets the driver collapse batched upserts into multi-row statements.
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+        hikariConfig.setMaximumPoolSize(config.getPoolSize());
+        hikariConfig.setConnectionTimeout(30000);
+        hikariConfig.addDataSourceProperty("useUnicode", "true");
+        hikariConfig.addDataSourceProperty("characterEncoding", "utf8");
+        return hikariConfig;
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.arkflame.flamecore.mysqlapi;
 
+import com.arkflame.flamecore.sqlapi.BackpressurePolicy;
+
 /**
  * A final class to hold MySQL database connection configuration.
  * This is compatible with Java 8.
@@ -10,13 +12,46 @@ public final class MySQLConfig {
     private final String database;
     private final String user;
     private final String password;
+    private final int poolSize;
+    private final int streamPoolSize;
+    private final int queueCapacity;
+    private final BackpressurePolicy backpressurePolicy;
 
     public MySQLConfig(String host, int port, String database, String user, String password) {
+        this(host, port, database, user, password, 10, 1000, BackpressurePolicy.FAIL_FAST);
+    }
+
+    /**
+     * @param poolSize The connection pool size. The database executor uses one thread per connection.
+     * @param queueCapacity The maximum number of database operations waiting for a thread.
+     * @param backpressurePolicy What to do with new operations once the queue is full.
+     */
+    public MySQLConfig(String host, int port, String database, String user, String password,
+                       int poolSize, int queueCapacity, BackpressurePolicy backpressurePolicy) {
+        this(host, port, database, user, password, poolSize, 2, queueCapacity, backpressurePolicy);
+    }
+
+    /**
+     * @param poolSize The connection pool size. The database executor uses one thread per connection.
+     * @param streamPoolSize The size of the separate pool used by streamed queries, which is the number of
+     *                       streams that can run at once. Further streams wait for a connection. The default is 2.
+     * @param queueCapacity The maximum number of database operations waiting for a thread.
+     * @param backpressurePolicy What to do with new operations once the queue is full.
+     */
+    public MySQLConfig(String host, int port, String database, String user, String password,
+                       int poolSize, int streamPoolSize, int queueCapacity, BackpressurePolicy backpressurePolicy) {
+        if (poolSize <= 0 || streamPoolSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Pool sizes and queue capacity must be positive.");
+        }
         this.host = host;
         this.port = port;
         this.database = database;
         this.user = user;
         this.password = password;
+        this.poolSize = poolSize;
+        this.streamPoolSize = streamPoolSize;
+        this.queueCapacity = queueCapacity;
+        this.backpressurePolicy = backpressurePolicy;
     }
 
     public String getHost() { return host; }
@@ -24,4 +59,8 @@ public final class MySQLConfig {
     public String getDatabase() { return database; }
     public String getUser() { return user; }
     public String getPassword() { return password; }
+    public int getPoolSize() { return poolSize; }
+    public int getStreamPoolSize() { return streamPoolSize; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public BackpressurePolicy getBackpressurePolicy() { return backpressurePolicy; }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import com.arkflame.flamecore.sqlapi.Dialect;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The MySQL dialect for the shared ORM engine.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class MySQLDialect implements Dialect {
+    @Override
+    public String quote(String identifier) {
+        return "`" + identifier + "`";
+    }
+
+    @Override
+    public String getColumnType(Class<?> type) {
+        if (type == int.class || type == Integer.class) return "INT";
+        if (type == long.class || type == Long.class) return "BIGINT";
+        if (type == String.class) return "VARCHAR(255)";
+        if (type == double.class || type == Double.class) return "DOUBLE";
+        if (type == float.class || type == Float.class) return "FLOAT";
+        if (type == short.class || type == Short.class) return "SMALLINT";
+        if (type == byte.class || type == Byte.class) return "TINYINT";
+        if (type == boolean.class || type == Boolean.class) return "BOOLEAN";
+        if (type == java.util.UUID.class) return "VARCHAR(36)";
+        return "TEXT";
+    }
+
+    @Override
+    public String getBinaryColumnType(int fixedLength) {
+        return fixedLength > 0 ? "BINARY(" + fixedLength + ")" : "MEDIUMBLOB";
+    }
+
+    @Override
+    public boolean isIndexable(String columnType) {
+        // MySQL cannot use TEXT or BLOB columns in a key without a prefix length.
+        return !columnType.endsWith("TEXT") && !columnType.endsWith("BLOB");
+    }
+
+    @Override
+    public String upsert(String table, String primaryKey, List<String> columns) {
+        String columnList = columns.stream().map(c -> quote(c) + ", ").collect(Collectors.joining()) + quote(primaryKey);
+        String placeholders = columns.stream().map(c -> "?, ").collect(Collectors.joining()) + "?";
+        // An entity with only a primary key still needs a valid ON DUPLICATE KEY clause.
+        String updates = columns.isEmpty()
+                ? quote(primaryKey) + " = " + quote(primaryKey)
+                : columns.stream().map(c -> quote(c) + " = VALUES(" + quote(c) + ")").collect(Collectors.joining(", "));
+        return "INSERT INTO " + quote(table) + " (" + columnList + ") VALUES (" + placeholders + ") ON DUPLICATE KEY UPDATE " + updates;
+    }
+
+    @Override
+    public String getUnlimited() {
+        // MySQL has no OFFSET without LIMIT, so use the largest possible limit.
+        return "18446744073709551615";
+    }
+
+    @Override
+    public int getMaxInParameters() {
+        // Keeps statements small; MySQL itself allows up to 65535 parameters.
+        return 500;
+    }
+}
@@ -0,0 +1,32 @@
+package com.arkflame.flamecore.mysqlapi;
+
+/**
+ * An immutable snapshot of the connection pool.
+ */
+public final class PoolStats {
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int totalConnections;
+    private final int maximumPoolSize;
+    private final int threadsAwaitingConnection;
+
+    public PoolStats(int activeConnections, int idleConnections, int totalConnections, int maximumPoolSize, int threadsAwaitingConnection) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.totalConnections = totalConnections;
+        this.maximumPoolSize = maximumPoolSize;
+        this.threadsAwaitingConnection = threadsAwaitingConnection;
+    }
+
+    public int getActiveConnections() { return activeConnections; }
+    public int getIdleConnections() { return idleConnections; }
+    public int getTotalConnections() { return totalConnections; }
+    public int getMaximumPoolSize() { return maximumPoolSize; }
+    public int getThreadsAwaitingConnection() { return threadsAwaitingConnection; }
+
+    @Override
+    public String toString() {
+        return "PoolStats{active=" + activeConnections + ", idle=" + idleConnections + ", total=" + totalConnections + "/" + maximumPoolSize
+                + ", waiting=" + threadsAwaitingConnection + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import com.arkflame.flamecore.sqlapi.StatementListener;
+import com.arkflame.flamecore.sqlapi.StatementType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Collects a latency histogram per statement type and entity class, and logs statements slower than a threshold.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class QueryMetrics implements StatementListener {
+    // Upper bucket bounds in milliseconds. Anything slower falls into a final overflow bucket.
+    private static final long[] BUCKET_BOUNDS_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+    // Slow statements are logged at most this often, plus a count of the ones that were not.
+    private static final long SLOW_LOG_INTERVAL_MILLIS = 1000;
+
+    private final Logger logger;
+    private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    // 0 disables slow statement logging.
+    private volatile long slowThresholdNanos;
+    private final AtomicLong lastSlowLog = new AtomicLong();
+    private final LongAdder suppressedSlowLogs = new LongAdder();
+
+    QueryMetrics(Logger logger) {
+        this.logger = logger;
+    }
+
+    void setSlowThresholdMillis(long thresholdMillis) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    @Override
+    public void onStatement(StatementType type, Class<?> entityClass, String sql, int rows, long elapsedNanos, boolean failed) {
+        long threshold = slowThresholdNanos;
+        boolean slow = threshold > 0 && elapsedNanos >= threshold;
+        histograms.computeIfAbsent(new Key(type, entityClass), k -> new Histogram()).record(elapsedNanos, rows, failed, slow);
+        if (slow) {
+            logSlow(type, entityClass, sql, rows, elapsedNanos, failed);
+        }
+    }
+
+    /**
+     * @return A snapshot per statement type and entity class, slowest in total first.
+     */
+    List<StatementStats> snapshot() {
+        List<StatementStats> stats = new ArrayList<>(histograms.size());
+        histograms.forEach((key, histogram) -> stats.add(histogram.snapshot(key)));
+        stats.sort(Comparator.comparingDouble(StatementStats::getTotalMillis).reversed());
+        return stats;
+    }
+
+    void reset() {
+        histograms.clear();
+    }
+
+    private void logSlow(StatementType type, Class<?> entityClass, String sql, int rows, long elapsedNanos, boolean failed) {
+        // During a lag spike every statement may be slow, so don't flood the log.
+        long now = System.currentTimeMillis();
+        long last = lastSlowLog.get();
+        if (now - last < SLOW_LOG_INTERVAL_MILLIS || !lastSlowLog.compareAndSet(last, now)) {
+            suppressedSlowLogs.increment();
+            return;
+        }
+        long suppressed = suppressedSlowLogs.sumThenReset();
+        logger.warning(String.format("Slow %s of %s: %.1fms for %d rows%s%s%s", type, entityClass.getSimpleName(), elapsedNanos / 1e6, rows,
+                failed ? " (failed)" : "", sql == null ? "" : ": " + sql,
+                suppressed > 0 ? " (" + suppressed + " more slow statements were not logged)" : ""));
+    }
+
+    private static final class Key {
+        private final StatementType type;
+        private final Class<?> entityClass;
+
+        Key(StatementType type, Class<?> entityClass) {
+            this.type = type;
+            this.entityClass = entityClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return type == other.type && entityClass == other.entityClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + entityClass.hashCode();
+        }
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCount = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long elapsedNanos, int rowCount, boolean failed, boolean slow) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            rows.add(rowCount);
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            if (failed) failures.increment();
+            if (slow) slowCount.increment();
+        }
+
+        StatementStats snapshot(Key key) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            double maxMillis = maxNanos.get() / 1e6;
+            return new StatementStats(key.type, key.entityClass.getSimpleName(), count.sum(), failures.sum(), slowCount.sum(), rows.sum(),
+                    totalNanos.sum() / 1e6, maxMillis,
+                    percentile(counts, total, 0.50, maxMillis), percentile(counts, total, 0.95, maxMillis), percentile(counts, total, 0.99, maxMillis));
+        }
+
+        private static double percentile(long[] counts, long total, double fraction, double maxMillis) {
+            if (total == 0) return 0.0;
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // The overflow bucket has no upper bound, and no bucket bound exceeds the slowest statement.
+                    return i < BUCKET_BOUNDS_MILLIS.length ? Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis) : maxMillis;
+                }
+            }
+            return maxMillis;
+        }
+    }
+}
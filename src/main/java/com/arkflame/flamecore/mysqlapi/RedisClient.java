@@ -0,0 +1,38 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The Redis commands used by the second-level cache. MySQLAPI uses a Jedis pool by default;
+ * implement this to use another client.
+ * Implementations must be thread-safe.
+ */
+public interface RedisClient {
+    /**
+     * @return The value of a key, or null if it does not exist.
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * @return The values of the keys in the same order, with null for keys that do not exist.
+     */
+    List<byte[]> mget(byte[]... keys);
+
+    /**
+     * Sets a key that expires after the given number of seconds.
+     */
+    void setex(byte[] key, long seconds, byte[] value);
+
+    void del(byte[]... keys);
+
+    void publish(byte[] channel, byte[] message);
+
+    /**
+     * Starts delivering the messages published on a channel to a listener, on a thread owned by the client.
+     * Returns immediately. The subscription lasts until the client is closed.
+     */
+    void subscribe(byte[] channel, Consumer<byte[]> listener);
+
+    void close();
+}
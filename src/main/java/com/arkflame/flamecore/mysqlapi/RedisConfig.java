@@ -0,0 +1,39 @@
+package com.arkflame.flamecore.mysqlapi;
+
+/**
+ * A final class to hold the Redis connection and key settings for the second-level cache.
+ * This is compatible with Java 8.
+ */
+public final class RedisConfig {
+    private final String host;
+    private final int port;
+    private final String password;
+    private final String namespace;
+    private final long expireAfterWriteSeconds;
+
+    public RedisConfig(String host, int port, String password) {
+        this(host, port, password, "flamecore", 600);
+    }
+
+    /**
+     * @param password The Redis password, or null if the server does not require one.
+     * @param namespace The prefix of every key and channel name. Servers that share cached entities must use the same namespace.
+     * @param expireAfterWriteSeconds How long an entity stays in Redis after it was loaded.
+     */
+    public RedisConfig(String host, int port, String password, String namespace, long expireAfterWriteSeconds) {
+        if (expireAfterWriteSeconds <= 0) {
+            throw new IllegalArgumentException("Expiry must be positive.");
+        }
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.namespace = namespace;
+        this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+    public String getPassword() { return password; }
+    public String getNamespace() { return namespace; }
+    public long getExpireAfterWriteSeconds() { return expireAfterWriteSeconds; }
+}
@@ -0,0 +1,272 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import com.arkflame.flamecore.sqlapi.EntityMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Redis-backed cache shared by every server that uses the same namespace.
+ * Entities are stored in the engine's compact binary format under namespace:entity:class:primaryKey.
+ * Saves delete the shared copy and publish an invalidation message, so the other servers drop
+ * their own read cache entries. Redis errors are logged and treated as cache misses.
+ * <p>
+ * Each copy is stamped with the entity's version token, which every save replaces. A server that read
+ * the database before another server's save can still write its copy afterwards, but that copy carries
+ * the old token and is treated as a miss, so a stale row is never served from Redis.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class SecondLevelCache {
+    private static final long ERROR_LOG_INTERVAL_MILLIS = 60000;
+
+    private final RedisClient client;
+    private final EntityMapper entityMapper;
+    private final Logger logger;
+    private final String keyPrefix;
+    private final String versionKeyPrefix;
+    private final byte[] channel;
+    private final long expireAfterWriteSeconds;
+    private final long versionExpireSeconds;
+    // Identifies this server's own messages, which it has already applied.
+    private final String serverId = UUID.randomUUID().toString();
+    // Classes this cache has seen, for resolving the class names in invalidation messages.
+    private final Map<String, Class<?>> knownClasses = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile long lastErrorLog;
+
+    /**
+     * @param onRemoteInvalidation Called with a class and its invalidated primary keys when another server
+     *                             saves or invalidates entities, or with null keys for the whole class.
+     */
+    SecondLevelCache(RedisClient client, RedisConfig config, EntityMapper entityMapper, Logger logger,
+                     BiConsumer<Class<?>, List<Object>> onRemoteInvalidation) {
+        this.client = client;
+        this.entityMapper = entityMapper;
+        this.logger = logger;
+        this.keyPrefix = config.getNamespace() + ":entity:";
+        this.versionKeyPrefix = config.getNamespace() + ":version:";
+        this.channel = bytes(config.getNamespace() + ":invalidate");
+        this.expireAfterWriteSeconds = config.getExpireAfterWriteSeconds();
+        // A token must outlive the copies stamped before it was replaced; once it expires, the
+        // missing token becomes the current version again.
+        this.versionExpireSeconds = expireAfterWriteSeconds * 2;
+        client.subscribe(channel, message -> receive(message, onRemoteInvalidation));
+    }
+
+    /**
+     * Returns the shared copy of an entity, or calls the loader on a miss and shares what it returns.
+     * The version token is read before the loader runs, so a copy loaded before a concurrent save
+     * is stored with the token that save replaces.
+     * @throws Exception if the loader failed, or IllegalStateException if the entity cannot be serialized.
+     */
+    <T> T load(Class<T> clazz, Object primaryKeyValue, Callable<T> loader) throws Exception {
+        knownClasses.putIfAbsent(clazz.getName(), clazz);
+        byte[] key = key(clazz, primaryKeyValue);
+        byte[] version = null;
+        boolean available = false;
+        try {
+            List<byte[]> values = client.mget(key, versionKey(clazz, primaryKeyValue));
+            version = values.get(1);
+            available = true;
+            T entity = decode(clazz, values.get(0), version);
+            if (entity != null) {
+                hits.incrementAndGet();
+                return entity;
+            }
+        } catch (IllegalStateException e) {
+            // Written by an incompatible version of the class; the copy stored below replaces it.
+        } catch (RuntimeException e) {
+            logError("read from", e);
+        }
+        misses.incrementAndGet();
+        T loaded = loader.call();
+        if (loaded != null && available) {
+            // Encoding errors are bugs in the entity class, not Redis errors, so they reach the caller.
+            byte[] value = encode(loaded, version);
+            try {
+                client.setex(key, expireAfterWriteSeconds, value);
+            } catch (RuntimeException e) {
+                logError("write to", e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Replaces the version tokens of entities that were saved or changed, deletes their shared copies,
+     * and tells the other servers.
+     */
+    void evict(Class<?> clazz, Collection<Object> primaryKeyValues) {
+        if (primaryKeyValues.isEmpty()) return;
+        knownClasses.putIfAbsent(clazz.getName(), clazz);
+        try {
+            // The new token makes every existing copy stale, including one still being written by a load
+            // that read the old row; deleting the copies only frees the memory.
+            for (Object primaryKeyValue : primaryKeyValues) {
+                client.setex(versionKey(clazz, primaryKeyValue), versionExpireSeconds, newVersion());
+            }
+            client.del(primaryKeyValues.stream().map(pk -> key(clazz, pk)).toArray(byte[][]::new));
+            client.publish(channel, invalidation(clazz, primaryKeyValues));
+        } catch (RuntimeException e) {
+            logError("invalidate in", e);
+        }
+    }
+
+    /**
+     * Tells the other servers to drop every cached entity of a class. Shared copies in Redis are
+     * not deleted, since that would need a key scan; they expire on their own.
+     */
+    void evictAll(Class<?> clazz) {
+        try {
+            client.publish(channel, invalidation(clazz, null));
+        } catch (RuntimeException e) {
+            logError("invalidate in", e);
+        }
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.get(), misses.get(), 0, 0);
+    }
+
+    void close() {
+        client.close();
+    }
+
+    /**
+     * Writes an invalidation message: this server's id, the class name, and the primary keys as text,
+     * or a count of -1 for the whole class. Keys of a type that cannot be parsed back invalidate the whole class.
+     */
+    private byte[] invalidation(Class<?> clazz, Collection<Object> primaryKeyValues) {
+        boolean plainKeys = primaryKeyValues != null && isPlainKeyType(entityMapper.getPrimaryKeyType(clazz));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(serverId);
+            out.writeUTF(clazz.getName());
+            out.writeInt(plainKeys ? primaryKeyValues.size() : -1);
+            if (plainKeys) {
+                for (Object primaryKeyValue : primaryKeyValues) {
+                    out.writeUTF(primaryKeyValue instanceof Enum ? ((Enum<?>) primaryKeyValue).name() : String.valueOf(primaryKeyValue));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an invalidation message. Only classes this server has cached are resolved, and the keys are
+     * parsed as plain values of their primary key type, so a message cannot create any other object.
+     */
+    private void receive(byte[] message, BiConsumer<Class<?>, List<Object>> onRemoteInvalidation) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (serverId.equals(in.readUTF())) return;
+            Class<?> clazz = knownClasses.get(in.readUTF());
+            // Nothing of an unknown class was cached here.
+            if (clazz == null) return;
+            int count = in.readInt();
+            if (count < 0) {
+                onRemoteInvalidation.accept(clazz, null);
+                return;
+            }
+            Class<?> keyType = entityMapper.getPrimaryKeyType(clazz);
+            List<Object> primaryKeyValues = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                primaryKeyValues.add(parseKey(keyType, in.readUTF()));
+            }
+            onRemoteInvalidation.accept(clazz, primaryKeyValues);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Ignoring a malformed cache invalidation message.", e);
+        }
+    }
+
+    private static boolean isPlainKeyType(Class<?> type) {
+        return type == String.class || type == UUID.class || type.isEnum() || type == int.class || type == Integer.class
+                || type == long.class || type == Long.class || type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parseKey(Class<?> type, String text) {
+        if (type == UUID.class) return UUID.fromString(text);
+        if (type.isEnum()) return Enum.valueOf((Class) type, text);
+        if (type == int.class || type == Integer.class) return Integer.valueOf(text);
+        if (type == long.class || type == Long.class) return Long.valueOf(text);
+        if (type == short.class || type == Short.class) return Short.valueOf(text);
+        if (type == byte.class || type == Byte.class) return Byte.valueOf(text);
+        return text;
+    }
+
+    /**
+     * Prefixes the serialized entity with the length of its version token and the token itself.
+     */
+    private byte[] encode(Object entity, byte[] version) {
+        byte[] stamp = version == null ? new byte[0] : version;
+        byte[] data = entityMapper.serialize(entity);
+        byte[] value = new byte[1 + stamp.length + data.length];
+        value[0] = (byte) stamp.length;
+        System.arraycopy(stamp, 0, value, 1, stamp.length);
+        System.arraycopy(data, 0, value, 1 + stamp.length, data.length);
+        return value;
+    }
+
+    /**
+     * @return The entity in a shared copy, or null if there is no copy or it was stamped with another version.
+     */
+    private <T> T decode(Class<T> clazz, byte[] value, byte[] version) {
+        if (value == null || value.length == 0) return null;
+        int stampLength = value[0] & 0xFF;
+        byte[] current = version == null ? new byte[0] : version;
+        if (value.length < 1 + stampLength
+                || !Arrays.equals(Arrays.copyOfRange(value, 1, 1 + stampLength), current)) {
+            return null;
+        }
+        return entityMapper.deserialize(clazz, Arrays.copyOfRange(value, 1 + stampLength, value.length));
+    }
+
+    private static byte[] newVersion() {
+        byte[] version = new byte[16];
+        ThreadLocalRandom.current().nextBytes(version);
+        return version;
+    }
+
+    private byte[] key(Class<?> clazz, Object primaryKeyValue) {
+        return bytes(keyPrefix + clazz.getName() + ":" + primaryKeyValue);
+    }
+
+    private byte[] versionKey(Class<?> clazz, Object primaryKeyValue) {
+        return bytes(versionKeyPrefix + clazz.getName() + ":" + primaryKeyValue);
+    }
+
+    private void logError(String action, RuntimeException e) {
+        // While Redis is down every operation fails, so only log once per interval.
+        long now = System.currentTimeMillis();
+        if (now - lastErrorLog >= ERROR_LOG_INTERVAL_MILLIS) {
+            lastErrorLog = now;
+            logger.log(Level.WARNING, "Failed to " + action + " the Redis cache. Falling back to the database.", e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
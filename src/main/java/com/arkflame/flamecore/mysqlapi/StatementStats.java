@@ -0,0 +1,61 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import com.arkflame.flamecore.sqlapi.StatementType;
+
+/**
+ * An immutable snapshot of the latency of one kind of statement for one entity class.
+ * Percentiles are the upper bounds of histogram buckets, so they are accurate to the bucket width.
+ */
+public final class StatementStats {
+    private final StatementType type;
+    private final String entityName;
+    private final long count;
+    private final long failures;
+    private final long slowCount;
+    private final long rows;
+    private final double totalMillis;
+    private final double maxMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+
+    public StatementStats(StatementType type, String entityName, long count, long failures, long slowCount, long rows,
+                          double totalMillis, double maxMillis, double p50Millis, double p95Millis, double p99Millis) {
+        this.type = type;
+        this.entityName = entityName;
+        this.count = count;
+        this.failures = failures;
+        this.slowCount = slowCount;
+        this.rows = rows;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+    }
+
+    public StatementType getType() { return type; }
+    public String getEntityName() { return entityName; }
+    public long getCount() { return count; }
+    public long getFailures() { return failures; }
+    public long getSlowCount() { return slowCount; }
+    public long getRows() { return rows; }
+    public double getTotalMillis() { return totalMillis; }
+    public double getMaxMillis() { return maxMillis; }
+    public double getP50Millis() { return p50Millis; }
+    public double getP95Millis() { return p95Millis; }
+    public double getP99Millis() { return p99Millis; }
+
+    /**
+     * @return The mean latency, or 0 if nothing was recorded.
+     */
+    public double getAverageMillis() {
+        return count == 0 ? 0.0 : totalMillis / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementStats{%s %s, count=%d, failed=%d, slow=%d, rows=%d, avg=%.2fms p50=%.1fms p95=%.1fms p99=%.1fms max=%.2fms}",
+                type, entityName, count, failures, slowCount, rows, getAverageMillis(), p50Millis, p95Millis, p99Millis, maxMillis);
+    }
+}
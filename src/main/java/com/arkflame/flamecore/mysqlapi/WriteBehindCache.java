@@ -0,0 +1,187 @@
+package com.arkflame.flamecore.mysqlapi;
+
+import com.arkflame.flamecore.sqlapi.DatabaseExecutor;
+import com.arkflame.flamecore.sqlapi.EntityMapper;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * An in-memory write-behind buffer for a single entity class.
+ * Saves are recorded as dirty entries keyed by primary key, so repeated saves of the same
+ * entity between flushes collapse into a single row write. Dirty entries are written as one
+ * batch when the flush interval elapses or the dirty count reaches its limit.
+ * This class is not intended for direct use. It is managed by MySQLAPI.
+ */
+class WriteBehindCache {
+    // Flushes that may fail to write an entity before its save is given up.
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JavaPlugin plugin;
+    private final EntityMapper entityMapper;
+    private final DatabaseExecutor executor;
+    private final Class<?> entityClass;
+    private final int maxDirtyCount;
+    private final Consumer<List<Object>> onFlushed;
+    private final Map<Object, PendingWrite> dirty = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Object flushLock = new Object();
+    private final BukkitTask flushTask;
+
+    /**
+     * @param onFlushed Called on the flushing thread with the primary keys of every batch that was written.
+     */
+    WriteBehindCache(JavaPlugin plugin, EntityMapper entityMapper, DatabaseExecutor executor, Class<?> entityClass, long flushIntervalTicks, int maxDirtyCount,
+                     Consumer<List<Object>> onFlushed) {
+        this.plugin = plugin;
+        this.entityMapper = entityMapper;
+        this.executor = executor;
+        this.entityClass = entityClass;
+        this.maxDirtyCount = maxDirtyCount;
+        this.onFlushed = onFlushed;
+        // The timer only hands the flush to the database executor, which does the actual write.
+        this.flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> executor.run(this::flush), flushIntervalTicks, flushIntervalTicks);
+    }
+
+    /**
+     * Marks an entity as dirty. The returned future completes once the entity has been written.
+     */
+    CompletableFuture<Void> markDirty(Object entity) {
+        Object pkValue = entityMapper.getPrimaryKeyValue(entity);
+        // A newer save of the same key replaces the older snapshot but shares its future.
+        PendingWrite pending = dirty.compute(pkValue, (key, existing) ->
+                existing == null ? new PendingWrite(entity, new CompletableFuture<>()) : new PendingWrite(entity, existing.future));
+
+        if (dirty.size() >= maxDirtyCount && flushScheduled.compareAndSet(false, true)) {
+            executor.run(() -> {
+                flushScheduled.set(false);
+                flush();
+            }).exceptionally(error -> {
+                flushScheduled.set(false);
+                return null;
+            });
+        }
+        return pending.future;
+    }
+
+    /**
+     * Returns the pending (not yet written) instance for a primary key, or null if it is clean.
+     */
+    Object getPending(Object pkValue) {
+        PendingWrite pending = dirty.get(pkValue);
+        return pending == null ? null : pending.entity;
+    }
+
+    /**
+     * Writes every dirty entity as a single batch on the calling thread.
+     * If the batch fails, each entity is retried on its own so one bad entity does not hold back the rest.
+     * Entities that still fail are kept dirty for the next flush, up to MAX_ATTEMPTS flushes, after which
+     * their futures complete exceptionally and they are dropped.
+     */
+    void flush() {
+        synchronized (flushLock) {
+            if (dirty.isEmpty()) return;
+
+            List<Object> keys = new ArrayList<>();
+            List<PendingWrite> batch = new ArrayList<>();
+            for (Map.Entry<Object, PendingWrite> entry : dirty.entrySet()) {
+                // Only remove the exact snapshot we captured; a concurrent save stays dirty.
+                if (dirty.remove(entry.getKey(), entry.getValue())) {
+                    keys.add(entry.getKey());
+                    batch.add(entry.getValue());
+                }
+            }
+            if (batch.isEmpty()) return;
+
+            List<Object> entities = new ArrayList<>(batch.size());
+            for (PendingWrite pending : batch) {
+                entities.add(pending.entity);
+            }
+            try {
+                entityMapper.saveAll(entities);
+                onFlushed.accept(keys);
+                for (PendingWrite pending : batch) {
+                    pending.future.complete(null);
+                }
+            } catch (Exception batchError) {
+                List<Object> written = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingWrite pending = batch.get(i);
+                    try {
+                        entityMapper.saveAll(Collections.singletonList(pending.entity));
+                        written.add(keys.get(i));
+                        pending.future.complete(null);
+                    } catch (Exception e) {
+                        retryLater(keys.get(i), pending, e);
+                    }
+                }
+                if (!written.isEmpty()) {
+                    onFlushed.accept(written);
+                }
+            }
+        }
+    }
+
+    private void retryLater(Object key, PendingWrite pending, Exception error) {
+        int attempts = pending.attempts + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            plugin.getLogger().log(Level.WARNING, "Failed to flush " + entityClass.getSimpleName() + " " + key + " after "
+                    + attempts + " attempts. Dropping it.", error);
+            pending.future.completeExceptionally(error);
+            // A newer save of the same key is still dirty and gets its own attempts.
+            return;
+        }
+        plugin.getLogger().warning("Failed to flush " + entityClass.getSimpleName() + " " + key + " (" + error
+                + "). It will be retried on the next flush.");
+        PendingWrite failed = new PendingWrite(pending.entity, pending.future, attempts);
+        // If the entity was saved again meanwhile, the newer snapshot wins and completes both futures.
+        dirty.merge(key, failed, (newer, old) -> {
+            newer.future.whenComplete((result, e) -> {
+                if (e != null) old.future.completeExceptionally(e);
+                else old.future.complete(null);
+            });
+            return newer;
+        });
+    }
+
+    /**
+     * Stops the flush timer and writes any remaining dirty entities synchronously.
+     * Entities that still cannot be written have their futures completed exceptionally.
+     */
+    void close() {
+        flushTask.cancel();
+        flush();
+        for (PendingWrite pending : dirty.values()) {
+            pending.future.completeExceptionally(new IllegalStateException(
+                    "Write-behind cache for " + entityClass.getSimpleName() + " was closed before the entity could be written."));
+        }
+        dirty.clear();
+    }
+
+    private static final class PendingWrite {
+        private final Object entity;
+        private final CompletableFuture<Void> future;
+
+        // Flushes that already failed to write this snapshot.
+        private final int attempts;
+
+        PendingWrite(Object entity, CompletableFuture<Void> future) {
+            this(entity, future, 0);
+        }
+
+        PendingWrite(Object entity, CompletableFuture<Void> future, int attempts) {
+            this.entity = entity;
+            this.future = future;
+            this.attempts = attempts;
+        }
+    }
+}
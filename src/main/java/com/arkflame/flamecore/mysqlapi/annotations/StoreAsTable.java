@@ -6,5 +6,6 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 @Retention(RetentionPolicy.RUNTIME)
+@com.arkflame.flamecore.sqlapi.annotations.StoreAsTable
 @Target(ElementType.FIELD)
 public @interface StoreAsTable {}
\ No newline at end of file
@@ -2,19 +2,21 @@ package com.arkflame.flamecore.npcapi;
 
 import org.bukkit.Location;
 import org.bukkit.entity.LivingEntity;
-import org.bukkit.scheduler.BukkitRunnable;
-import java.util.Comparator;
 
 /**
  * A controller task that scans for targets and delegates the actual combat
  * to a sub-task (NpcAttackTask). This avoids code duplication and separates concerns.
  * It also includes logic to prevent the NPC from getting stuck on an unreachable target.
+ * The sub-task is ticked from this task, so the NPC only has one entry in the NpcScheduler.
  */
-class AttackNearbyTask extends BukkitRunnable {
+class AttackNearbyTask implements NpcTask {
+    private static final int SCAN_INTERVAL_TICKS = 10;
+
     private final Npc npc;
     private final double radius;
     private final double radiusSquared;
     private NpcAttackTask currentAttackSubTask;
+    private int ticksUntilScan = 0;
 
     // State variables for stuck detection
     private int stuckAttempts = 0;
@@ -27,12 +29,28 @@ class AttackNearbyTask extends BukkitRunnable {
     }
 
     @Override
-    public void run() { // Runs each 10 ticks
+    public boolean tick(int elapsedTicks) {
         if (!npc.isSpawned() || npc.behavior != Behavior.ATTACKING_NEARBY) {
-            this.cancel(); // Stop if the NPC is despawned or behavior changed.
-            return;
+            return false; // Stop if the NPC is despawned or behavior changed.
+        }
+
+        ticksUntilScan -= elapsedTicks;
+        if (ticksUntilScan <= 0) {
+            ticksUntilScan = SCAN_INTERVAL_TICKS;
+            scan();
         }
 
+        // Let the sub-task do the actual fighting. It finishes once its target is no longer valid.
+        if (currentAttackSubTask != null && !currentAttackSubTask.tick(elapsedTicks)) {
+            currentAttackSubTask = null;
+        }
+        return true;
+    }
+
+    /**
+     * Validates the current target, handles stuck detection and picks a new target. Runs every 10 ticks.
+     */
+    private void scan() {
         if (npc.targetEntity != null) {
             LivingEntity currentTarget = (LivingEntity) npc.targetEntity;
             
@@ -62,12 +80,7 @@ class AttackNearbyTask extends BukkitRunnable {
                     // Try to find a new target, excluding the current one.
                     LivingEntity newTarget = findNearestTarget(currentTarget);
                     
-                    // Clean up the old attack sub-task regardless of the outcome.
-                    if (this.currentAttackSubTask != null) {
-                        try { this.currentAttackSubTask.cancel(); } catch (IllegalStateException ignored) {}
-                        this.currentAttackSubTask = null;
-                    }
-                    
+                    // The old attack sub-task is replaced below regardless of the outcome.
                     if (newTarget != null) {
                         // A new target was found, switch to it.
                         npc.targetEntity = newTarget;
@@ -79,8 +92,7 @@ class AttackNearbyTask extends BukkitRunnable {
                     // Reset the stuck counter and create a new attack task for the determined target (new or fallback).
                     stuckAttempts = 0;
                     this.currentAttackSubTask = new NpcAttackTask(npc);
-                    this.currentAttackSubTask.runTaskTimer(NpcAPI.getPlugin(), 0L, 1L);
-                    return; // We're done for this tick.
+                    return; // We're done for this scan.
                 }
 
                 // If target is valid and we're not stuck, let the sub-task handle it.
@@ -90,15 +102,8 @@ class AttackNearbyTask extends BukkitRunnable {
 
         // If we reach here, the current target is invalid (dead, too far, etc.) or was null.
         
-        // 1. Clean up the old sub-task if it exists.
-        if (this.currentAttackSubTask != null) {
-            try {
-                this.currentAttackSubTask.cancel();
-            } catch (IllegalStateException ignored) {
-                // The sub-task may have already cancelled itself, which is fine.
-            }
-            this.currentAttackSubTask = null;
-        }
+        // 1. Drop the old sub-task if it exists.
+        this.currentAttackSubTask = null;
         
         // 2. Clear the invalid target and reset stuck detection state.
         npc.targetEntity = null;
@@ -112,29 +117,19 @@ class AttackNearbyTask extends BukkitRunnable {
         if (newTarget != null) {
             npc.targetEntity = newTarget;
             this.currentAttackSubTask = new NpcAttackTask(npc);
-            this.currentAttackSubTask.runTaskTimer(NpcAPI.getPlugin(), 0L, 1L);
         }
     }
     
     /**
      * Finds the nearest valid target for the NPC, with an option to exclude an entity.
-     * This version is optimized to only search for entities near the NPC.
+     * The candidates come from the TargetIndex, which reads each chunk once per tick for all NPCs.
      *
      * @param excludeEntity The entity to ignore during the search (can be null).
      * @return The closest valid LivingEntity, or null if none are found.
      */
     private LivingEntity findNearestTarget(LivingEntity excludeEntity) {
         if (!npc.isSpawned()) return null;
-        
-        // Use getNearbyEntities for much better performance than iterating all world entities.
-        return npc.getLocation().getWorld()
-                .getNearbyEntities(npc.getLocation(), radius, radius, radius).stream()
-                .filter(entity -> entity instanceof LivingEntity) // Ensure we only consider living entities
-                .map(entity -> (LivingEntity) entity)
-                .filter(entity -> !entity.equals(excludeEntity)) // Exclude the specified entity
-                .filter(entity -> NpcAttackTask.isValidTarget(npc, entity, radiusSquared)) // Use the streamlined method to filter for valid targets.
-                .min(Comparator.comparingDouble(entity -> npc.getLocation().distanceSquared(entity.getLocation())))
-                .orElse(null);
+        return NpcAPI.getTargetIndex().findNearest(npc, npc.getHandle().getEntity().getWorld(), radius, excludeEntity);
     }
 
     /**
@@ -146,20 +141,4 @@ class AttackNearbyTask extends BukkitRunnable {
     private LivingEntity findNearestTarget() {
         return findNearestTarget(null);
     }
-    
-    /**
-     * Overridden to ensure the sub-task is also cancelled, preventing it from running loose.
-     */
-    @Override
-    public synchronized void cancel() throws IllegalStateException {
-        super.cancel();
-        if (currentAttackSubTask != null) {
-            try {
-                currentAttackSubTask.cancel();
-            } catch (IllegalStateException ignored) {
-                // Ignore, task is already stopped.
-            }
-            currentAttackSubTask = null;
-        }
-    }
-}
\ No newline at end of file
+}
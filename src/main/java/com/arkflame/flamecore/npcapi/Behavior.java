@@ -25,6 +25,10 @@ public enum Behavior {
      * The NPC is actively attacking the nearest player within a radius.
      */
     ATTACKING_NEARBY,
+    /**
+     * The NPC is attacking the targets its {@link NpcGroup} assigns to it.
+     */
+    GROUP_ATTACKING,
     /**
      * The NPC is in the process of breaking a block.
      */
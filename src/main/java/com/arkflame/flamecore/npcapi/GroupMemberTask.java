@@ -0,0 +1,38 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.entity.Entity;
+
+/**
+ * The behavior of an NPC fighting as part of an NpcGroup. The group picks the target; this task only
+ * steers the NPC towards it and attacks, through an NpcAttackTask it ticks itself.
+ */
+class GroupMemberTask implements NpcTask {
+    private final Npc npc;
+    private final NpcGroup group;
+    private Entity currentTarget;
+    private NpcAttackTask attackSubTask;
+
+    GroupMemberTask(Npc npc, NpcGroup group) {
+        this.npc = npc;
+        this.group = group;
+    }
+
+    @Override
+    public boolean tick(int elapsedTicks) {
+        if (!npc.isSpawned() || npc.behavior != Behavior.GROUP_ATTACKING || npc.group != group) {
+            return false; // Stop if the NPC is despawned, left the group or got another behavior.
+        }
+        // The group assigned a different target since the last run.
+        if (npc.targetEntity != currentTarget) {
+            currentTarget = npc.targetEntity;
+            attackSubTask = currentTarget == null ? null : new NpcAttackTask(npc);
+        }
+        if (attackSubTask != null && !attackSubTask.tick(elapsedTicks)) {
+            // The target died or got away. Wait for the group's next assignment.
+            attackSubTask = null;
+            currentTarget = null;
+            npc.targetEntity = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.arkflame.flamecore.npcapi;
+
+/**
+ * How often an NPC's behavior runs, based on its distance to the nearest player.
+ *
+ * @see Npc#setLodDistances(double, double)
+ */
+public enum LodTier {
+    /**
+     * A player is close by. The behavior runs at the NPC's own tick interval.
+     */
+    NEAR,
+    /**
+     * The nearest player is at mid range. The behavior runs at the NPC's mid-range tick interval.
+     */
+    MID,
+    /**
+     * No player is within range. The behavior is suspended until one comes closer.
+     */
+    FAR
+}
@@ -12,11 +12,11 @@ import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
-import java.io.File;
-import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -26,9 +26,12 @@ public class Npc {
         HELMET, CHESTPLATE, LEGGINGS, BOOTS, MAIN_HAND, OFF_HAND
     }
 
+    // Decorative NPCs are usually looked at from across a hub, not fought up close.
+    private static final int DEFAULT_DECORATIVE_VIEW_DISTANCE = 48;
+    private static boolean warnedNoPacketNpcs = false;
+
     private final NPC citizensNpc;
     private final UUID flameId;
-    private BukkitRunnable behaviorTask;
 
     // --- State Fields ---
     private final Set<UUID> allies = new HashSet<>();
@@ -40,12 +43,44 @@ public class Npc {
     public boolean persistent = false;
     private int noDamageTicks = 10;
     private int hitFrequency = 10;
+    private int tickInterval = 1;
+    private double lodNearDistance = 48;
+    private double lodFarDistance = 128;
+    private int midTickInterval = 5;
+    private boolean decorative = false;
+    private int viewDistance = -1;
+    private String viewPermission;
+    private final Set<UUID> allowedViewers = new HashSet<>();
+    private int maxViewers = 0;
+    // Maintained by the NpcScheduler while the NPC has a behavior.
+    LodTier lodTier = LodTier.NEAR;
     public EntityType entityType = EntityType.PLAYER;
 
     public Behavior behavior = Behavior.IDLE;
     public Entity targetEntity;
     public Location targetLocation;
 
+    // --- Spatial Index State (maintained by NpcGrid) ---
+    UUID gridWorld;
+    long gridCell;
+    double gridX, gridY, gridZ;
+    final Location gridScratch = new Location(null, 0, 0, 0);
+
+    // The group this NPC fights with, if any. Maintained by NpcGroup.
+    NpcGroup group;
+
+    // --- Navigation State (maintained by NpcNavigation) ---
+    // The entity and its position when the current path was requested.
+    Entity navTarget;
+    UUID navWorld;
+    double navX, navY, navZ;
+    long navTick;
+
+    // --- Visibility State (maintained by NpcVisibility) ---
+    // Players in range that count towards the max viewers, and players this NPC is hidden from.
+    final Set<UUID> shownTo = new HashSet<>();
+    final Set<UUID> hiddenFrom = new HashSet<>();
+
     /**
      * Public constructor, called exclusively by the static create method.
      */
@@ -126,6 +161,66 @@ public class Npc {
         return this.hitFrequency;
     }
 
+    /**
+     * Sets how often the NPC's behavior runs. NPCs that don't need fast reactions, e.g. background
+     * guards, can run every few ticks to save server time. Cooldowns still count real ticks.
+     *
+     * @param ticks The interval in server ticks, at least 1.
+     */
+    public void setTickInterval(int ticks) {
+        this.tickInterval = Math.max(1, ticks);
+    }
+
+    public int getTickInterval() {
+        return this.tickInterval;
+    }
+
+    /**
+     * Sets the distances to the nearest player that decide the NPC's {@link LodTier}. Within the near
+     * distance the behavior runs at the normal tick interval, up to the far distance it runs at the
+     * mid-range interval, and beyond it the behavior is suspended. Tiers are re-evaluated once per second.
+     * Pass {@link Double#MAX_VALUE} for both to always run at full rate.
+     *
+     * @param nearDistance The near distance in blocks (default 48).
+     * @param farDistance  The far distance in blocks (default 128), at least the near distance.
+     */
+    public void setLodDistances(double nearDistance, double farDistance) {
+        if (nearDistance < 0 || farDistance < nearDistance) {
+            throw new IllegalArgumentException("LOD distances must satisfy 0 <= near <= far.");
+        }
+        this.lodNearDistance = nearDistance;
+        this.lodFarDistance = farDistance;
+    }
+
+    public double getLodNearDistance() {
+        return this.lodNearDistance;
+    }
+
+    public double getLodFarDistance() {
+        return this.lodFarDistance;
+    }
+
+    /**
+     * Sets how often the behavior runs while the nearest player is at mid range.
+     * The NPC's own tick interval is used instead if it is longer.
+     *
+     * @param ticks The interval in server ticks (default 5), at least 1.
+     */
+    public void setMidTickInterval(int ticks) {
+        this.midTickInterval = Math.max(1, ticks);
+    }
+
+    public int getMidTickInterval() {
+        return this.midTickInterval;
+    }
+
+    /**
+     * @return The NPC's level of detail as of the last evaluation, or NEAR if it has no behavior.
+     */
+    public LodTier getLodTier() {
+        return this.lodTier;
+    }
+
     public void setCustomDamage(double damage) {
         this.customDamage = damage;
     }
@@ -160,36 +255,42 @@ public class Npc {
         if (!citizensNpc.isSpawned()) {
             citizensNpc.spawn(initialSpawnLocation);
         }
+        NpcAPI.updateIndex(this);
     }
 
     public void despawn() {
         citizensNpc.despawn();
+        NpcAPI.updateIndex(this);
     }
 
     public void teleport(Location location) {
         CitizensCompat.teleport(citizensNpc, location);
+        NpcAPI.updateIndex(this);
     }
 
     public void destroy() {
         stopBehavior();
         if (this.persistent) {
-            File npcFile = new File(NpcAPI.getNpcsFolder(), getUniqueId() + ".yml");
-            if (npcFile.exists()) {
-                npcFile.delete();
-            }
+            NpcAPI.getStore().remove(getUniqueId());
         }
         citizensNpc.destroy();
     }
 
+    /**
+     * Saves this NPC if it is persistent, or forgets its saved copy if it no longer is.
+     * The data is copied right away and written to disk asynchronously, together with other saves.
+     */
     public void save() {
-        if (!this.persistent)
+        if (!this.persistent) {
+            NpcAPI.getStore().remove(getUniqueId());
             return;
+        }
         if (this.initialSpawnLocation == null) {
             NpcAPI.getPlugin().getLogger().warning("Attempted to save persistent NPC '" + getName()
                     + "' without an initial spawn location. Aborting save.");
             return;
         }
-        NpcSerializer.serialize(this);
+        NpcAPI.getStore().put(NpcSerializer.serialize(this));
     }
 
     // --- Ally Management Methods ---
@@ -213,29 +314,21 @@ public class Npc {
 
     // --- Behavior Methods ---
     public void stopBehavior() {
-        if (behaviorTask != null) {
-            try {
-                behaviorTask.cancel();
-            } catch (IllegalStateException ignored) {
-            }
-            behaviorTask = null;
-        }
-        if (isSpawned()) {
-            citizensNpc.getNavigator().cancelNavigation();
-        }
+        NpcAPI.getScheduler().cancel(this);
+        NpcAPI.getNavigation().cancel(this);
         this.behavior = Behavior.IDLE;
         this.targetEntity = null;
         this.targetLocation = null;
     }
 
     public void attack(Entity target) {
+        if (!checkBehavior("attack")) return;
         stopBehavior();
         if (!(target instanceof LivingEntity))
             return;
         this.behavior = Behavior.ATTACKING;
         this.targetEntity = target;
-        this.behaviorTask = new NpcAttackTask(this);
-        this.behaviorTask.runTaskTimer(NpcAPI.getPlugin(), 0L, 1L);
+        NpcAPI.getScheduler().schedule(this, new NpcAttackTask(this));
     }
 
     public void attackNearby() {
@@ -243,41 +336,63 @@ public class Npc {
     }
 
     public void attackNearby(double radius) {
+        if (!checkBehavior("attack nearby entities")) return;
         stopBehavior();
         this.behavior = Behavior.ATTACKING_NEARBY;
-        this.behaviorTask = new AttackNearbyTask(this, radius);
-        this.behaviorTask.runTaskTimer(NpcAPI.getPlugin(), 0L, 10L);
+        NpcAPI.getScheduler().schedule(this, new AttackNearbyTask(this, radius));
     }
 
     public void moveTo(Location location) {
+        if (!checkBehavior("move")) return;
         stopBehavior();
         citizensNpc.getNavigator().setTarget(location);
+        NpcAPI.getNavigation().forget(this);
     }
 
     public void follow(Entity target) {
+        if (!checkBehavior("follow")) return;
         stopBehavior();
         citizensNpc.getNavigator().setTarget(target, false);
+        NpcAPI.getNavigation().forget(this);
     }
 
     public void breakBlock(final Block block) {
+        if (!checkBehavior("break blocks")) return;
         stopBehavior();
-        new BukkitRunnable() {
+        this.behavior = Behavior.BREAKING_BLOCK;
+        NpcAPI.getScheduler().schedule(this, new NpcTask() {
             int ticks = 0;
+            int ticksUntilSwing = 0;
 
             @Override
-            public void run() {
+            public boolean tick(int elapsedTicks) {
+                // Swings every 10 ticks and breaks the block after 60.
+                ticksUntilSwing -= elapsedTicks;
+                if (ticksUntilSwing > 0) {
+                    return true;
+                }
+                ticksUntilSwing = 10;
                 if (!isSpawned() || block.getType() == Material.AIR || ticks >= 60) {
                     if (isSpawned() && block.getType() != Material.AIR) {
                         block.breakNaturally();
                     }
-                    cancel();
-                    return;
+                    behavior = Behavior.IDLE;
+                    return false;
                 }
                 CitizensCompat.faceLocation(citizensNpc, block.getLocation());
                 CitizensCompat.playSwingAnimation(citizensNpc);
                 ticks += 10;
+                return true;
             }
-        }.runTaskTimer(NpcAPI.getPlugin(), 0L, 10L);
+        });
+    }
+
+    private boolean checkBehavior(String action) {
+        if (decorative) {
+            NpcAPI.getPlugin().getLogger().warning("Decorative NPC '" + getName() + "' cannot " + action + ".");
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -314,6 +429,163 @@ public class Npc {
         return npc;
     }
 
+    /**
+     * Creates a decorative NPC, for hubs and lobbies, and spawns it at a location.
+     * Decorative NPCs can stand, look at players and be clicked, but have no behaviors and cannot be damaged.
+     * Where Citizens supports it they are packet-only: each player within the view distance is sent a
+     * fake entity, and nothing exists or ticks on the server, so thousands of them cost almost nothing.
+     *
+     * @param name          The name of the NPC.
+     * @param spawnLocation The location where the NPC will be created and spawned.
+     * @return The newly created Npc instance.
+     */
+    public static Npc createDecorative(String name, Location spawnLocation) {
+        if (!NpcAPI.isEnabled()) {
+            throw new IllegalStateException("NpcAPI is not enabled because Citizens plugin is not installed.");
+        }
+
+        NPC citizensNpc = CitizensCompat.getTemporaryNPCRegistry().createNPC(EntityType.PLAYER, name);
+        Npc npc = new Npc(citizensNpc, UUID.randomUUID());
+        npc.getHandle().getOrAddTrait(Owner.class).setOwner(name);
+        npc.getHandle().getOrAddTrait(LookClose.class).lookClose(true);
+        npc.makeDecorative(DEFAULT_DECORATIVE_VIEW_DISTANCE);
+        npc.setSpawnLocation(spawnLocation);
+
+        NpcAPI.registerNpc(npc);
+        npc.spawn();
+
+        return npc;
+    }
+
+    /**
+     * Turns this NPC into a decorative one. Must be called before it first spawns.
+     */
+    void makeDecorative(int viewDistance) {
+        this.decorative = true;
+        citizensNpc.setProtected(true);
+        if (!CitizensCompat.makePacketOnly(citizensNpc) && !warnedNoPacketNpcs) {
+            warnedNoPacketNpcs = true;
+            NpcAPI.getPlugin().getLogger().warning("This Citizens version has no packet NPCs."
+                    + " Decorative NPCs will be normal entities without behaviors.");
+        }
+        if (viewDistance > 0) {
+            setViewDistance(viewDistance);
+        }
+    }
+
+    /**
+     * @return Whether this is a decorative NPC created with {@link #createDecorative(String, Location)}.
+     */
+    public boolean isDecorative() {
+        return decorative;
+    }
+
+    /**
+     * Sets how far away, in blocks, players can see this NPC. Players further away are sent nothing for it.
+     * Ignored on Citizens versions without a per-NPC tracking range.
+     *
+     * @param blocks The distance in blocks.
+     */
+    public void setViewDistance(int blocks) {
+        if (blocks <= 0) {
+            throw new IllegalArgumentException("View distance must be positive.");
+        }
+        this.viewDistance = blocks;
+        CitizensCompat.setTrackingRange(citizensNpc, blocks);
+        NpcAPI.updateVisibility(this);
+    }
+
+    /**
+     * @return The view distance in blocks, or -1 if none was set and the server's entity tracking range is used.
+     */
+    public int getViewDistance() {
+        return viewDistance;
+    }
+
+    /**
+     * Only shows this NPC to players with a permission. Players are re-checked when they move into
+     * another chunk, so a permission granted to a player standing still takes effect on their next move.
+     *
+     * @param permission The permission, or null to show the NPC regardless of permissions.
+     */
+    public void setViewPermission(String permission) {
+        this.viewPermission = permission;
+        NpcAPI.updateVisibility(this);
+    }
+
+    public String getViewPermission() {
+        return viewPermission;
+    }
+
+    /**
+     * Adds a player to this NPC's viewers. Once it has any viewers, the NPC is only shown to them.
+     */
+    public void addViewer(Player player) {
+        if (allowedViewers.add(player.getUniqueId())) {
+            NpcAPI.updateVisibility(this);
+        }
+    }
+
+    public void removeViewer(Player player) {
+        if (allowedViewers.remove(player.getUniqueId())) {
+            NpcAPI.updateVisibility(this);
+        }
+    }
+
+    public void clearViewers() {
+        if (!allowedViewers.isEmpty()) {
+            allowedViewers.clear();
+            NpcAPI.updateVisibility(this);
+        }
+    }
+
+    /**
+     * @return The players this NPC is restricted to, or an empty set if anyone may see it.
+     */
+    public Set<UUID> getViewers() {
+        return Collections.unmodifiableSet(allowedViewers);
+    }
+
+    /**
+     * Limits how many players within the view distance are shown this NPC at once. Further players are
+     * shown it as soon as a viewer leaves the range, quits or loses access.
+     *
+     * @param maxViewers The limit, or 0 for no limit.
+     */
+    public void setMaxViewers(int maxViewers) {
+        if (maxViewers < 0) {
+            throw new IllegalArgumentException("Max viewers cannot be negative.");
+        }
+        this.maxViewers = maxViewers;
+        NpcAPI.updateVisibility(this);
+    }
+
+    public int getMaxViewers() {
+        return maxViewers;
+    }
+
+    /**
+     * @return Whether this NPC is currently shown to a player, as far as its visibility rules are concerned.
+     */
+    public boolean isVisibleTo(Player player) {
+        return !hiddenFrom.contains(player.getUniqueId());
+    }
+
+    /**
+     * @return Whether the player passes the permission and viewer rules, regardless of distance and max viewers.
+     */
+    boolean isAllowedViewer(Player player) {
+        if (!allowedViewers.isEmpty() && !allowedViewers.contains(player.getUniqueId())) {
+            return false;
+        }
+        return viewPermission == null || player.hasPermission(viewPermission);
+    }
+
+    boolean hasVisibilityRules() {
+        // The view distance alone is handled by Citizens' tracking range; it only matters here with a viewer limit.
+        return viewPermission != null || !allowedViewers.isEmpty() || maxViewers > 0;
+    }
+
     /**
      * Sets the location where the NPC will spawn and respawn.
      * If the NPC is already spawned, it will be teleported to this new location.
@@ -350,8 +622,7 @@ public class Npc {
     /**
      * Sets a piece of equipment for the NPC.
      * For 1.8 compatibility, this uses direct equipment setting.
-     * The OFF_HAND slot is handled safely using reflection to ensure it only
-     * runs on servers that support it (1.9+).
+     * The OFF_HAND slot is only supported on servers that have it (1.9+).
      * 
      * @param slot The equipment slot to modify.
      * @param item The item to place in the slot.
@@ -382,25 +653,22 @@ public class Npc {
                 entity.getEquipment().setItemInHand(item);
                 break;
             case OFF_HAND:
-                try {
-                    // This is the direct feature detection. Try to get the method.
-                    Method setOffHand = entity.getEquipment().getClass().getMethod("setItemInOffHand", ItemStack.class);
-                    // If we get here, the method exists. Now, invoke it.
-                    setOffHand.invoke(entity.getEquipment(), item);
-                } catch (NoSuchMethodException e) {
-                    // This exception is expected on servers before 1.9. It's not an error.
+                // Resolved once by CitizensCompat; servers before 1.9 have no off-hand.
+                if (!CitizensCompat.setItemInOffHand(entity.getEquipment(), item)) {
                     NpcAPI.getPlugin().getLogger().warning("Cannot set off-hand item for NPC '" + getName()
                             + "'. This server version does not support it.");
-                } catch (Exception e) {
-                    // Any other exception is a real error during invocation.
-                    NpcAPI.getPlugin().getLogger()
-                            .severe("Failed to set off-hand item for NPC '" + getName() + "' via reflection.");
-                    e.printStackTrace();
                 }
                 break;
         }
     }
 
+    /**
+     * @return The group this NPC belongs to, or null.
+     */
+    public NpcGroup getGroup() {
+        return group;
+    }
+
     public Behavior getBehavior() {
         return behavior;
     }
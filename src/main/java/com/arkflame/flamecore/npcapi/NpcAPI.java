@@ -1,7 +1,5 @@
 package com.arkflame.flamecore.npcapi;
 
-import com.arkflame.flamecore.configapi.Config;
-import com.arkflame.flamecore.configapi.ConfigAPI;
 import com.arkflame.flamecore.npcapi.util.CitizensCompat;
 import net.citizensnpcs.api.npc.NPC;
 import org.bukkit.Bukkit;
@@ -13,7 +11,7 @@ import org.bukkit.scheduler.BukkitRunnable;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.logging.Level;
 
 /**
  * Main entry point for the NpcAPI.
@@ -32,12 +30,27 @@ public final class NpcAPI {
     // Key: Citizens NPC UUID, Value: FlameCore NPC UUID (flameId)
     private static final Map<UUID, UUID> citizensToFlameMap = new ConcurrentHashMap<>();
 
-    private static File npcsFolder;
+    // Spawned NPCs by position, for getNearby and getNearest. Refreshed every tick.
+    private static final NpcGrid grid = new NpcGrid();
+    // Runs every NPC behavior from the single tick task below.
+    private static final NpcScheduler scheduler = new NpcScheduler();
+    // Attack target candidates shared by all behaviors, rebuilt lazily every tick.
+    private static final TargetIndex targetIndex = new TargetIndex();
+    // Decides when behaviors re-path, and limits path requests per tick.
+    private static final NpcNavigation navigation = new NpcNavigation();
+    // Groups currently assigning targets to their members.
+    private static final Set<NpcGroup> attackingGroups = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Per-player visibility of NPCs with visibility rules, updated as players move between chunks.
+    private static final NpcVisibility visibility = new NpcVisibility(grid);
+
+    // Persistent NPCs to create at startup, a batch per tick.
+    private static final int SPAWN_BATCH_SIZE = 50;
+
+    private static NpcStore store;
 
     public static void init(JavaPlugin pluginInstance) {
         if (plugin != null) return;
         plugin = pluginInstance;
-        npcsFolder = new File(plugin.getDataFolder(), "npcs");
 
         if (Bukkit.getPluginManager().getPlugin("Citizens") == null) {
             plugin.getLogger().warning("Citizens plugin not found. NpcAPI will be disabled.");
@@ -47,13 +60,28 @@ public final class NpcAPI {
         citizensEnabled = true;
         plugin.getLogger().info("Successfully hooked into Citizens for NpcAPI.");
         Bukkit.getPluginManager().registerEvents(new NpcListener(), plugin);
-        
+
+        store = new NpcStore(new File(plugin.getDataFolder(), "npcs.dat"),
+                new File(plugin.getDataFolder(), "npcs"), plugin.getLogger());
+        loadNpcs();
+
+        // The only NPC task on the Bukkit scheduler. It follows NPC movement, despawns and respawns,
+        // so proximity queries never need to walk every NPC, then runs the NPC behaviors.
         new BukkitRunnable() {
             @Override
             public void run() {
-                loadNpcsFromFiles();
+                for (Npc npc : managedNpcs.values()) {
+                    grid.update(npc);
+                }
+                targetIndex.reset();
+                navigation.reset();
+                // Groups assign targets first, so their members act on them in the same tick.
+                for (NpcGroup group : new ArrayList<>(attackingGroups)) {
+                    group.tick();
+                }
+                scheduler.tick();
             }
-        }.runTask(plugin);
+        }.runTaskTimer(plugin, 1L, 1L);
     }
     
     public static boolean isEnabled() {
@@ -108,26 +136,77 @@ public final class NpcAPI {
         return Collections.unmodifiableCollection(managedNpcs.values());
     }
 
+    /**
+     * Gets the spawned NPCs within a radius of a location.
+     * NPC positions are indexed once per tick, so this only checks NPCs in nearby grid cells.
+     * Must be called on the main thread.
+     */
     public static List<Npc> getNearby(Location location, double radius) {
         if (!isEnabled() || location.getWorld() == null) {
             return Collections.emptyList();
         }
-        double radiusSquared = radius * radius;
-        return managedNpcs.values().stream()
-            .filter(Npc::isSpawned)
-            .filter(npc -> Objects.equals(npc.getLocation().getWorld(), location.getWorld()))
-            .filter(npc -> npc.getLocation().distanceSquared(location) <= radiusSquared)
-            .collect(Collectors.toList());
+        return grid.getNearby(location, radius);
     }
     
+    /**
+     * Gets the spawned NPC nearest to a location, in the same world.
+     * Must be called on the main thread.
+     */
     public static Optional<Npc> getNearest(Location location) {
+        List<Npc> nearest = getNearest(location, 1);
+        return nearest.isEmpty() ? Optional.empty() : Optional.of(nearest.get(0));
+    }
+
+    /**
+     * Gets up to {@code count} spawned NPCs nearest to a location, in the same world, nearest first.
+     * The search widens one ring of grid cells at a time and stops as soon as no closer NPC can exist.
+     * Must be called on the main thread.
+     */
+    public static List<Npc> getNearest(Location location, int count) {
         if (!isEnabled() || location.getWorld() == null) {
-            return Optional.empty();
+            return Collections.emptyList();
+        }
+        return grid.getNearest(location, count);
+    }
+
+    /**
+     * Limits the time NPC behaviors may take per tick. Once it is used up, the remaining behaviors run
+     * on the next tick instead, so a large fight slows NPCs down rather than the server. The default is 5 milliseconds.
+     *
+     * @param budgetMicros The budget in microseconds, or 0 for no limit.
+     */
+    public static void setTickBudget(long budgetMicros) {
+        if (budgetMicros < 0) {
+            throw new IllegalArgumentException("Tick budget cannot be negative.");
+        }
+        scheduler.setBudgetNanos(budgetMicros * 1000L);
+    }
+
+    /**
+     * @return The number of running NPC behaviors and how long the last tick took.
+     */
+    public static NpcTickStats getTickStats() {
+        return scheduler.stats();
+    }
+
+    /**
+     * Limits how many new paths NPC behaviors may request from Citizens per tick, across all NPCs.
+     * Behaviors over the limit keep their current path and wait in line; the next tick serves that line first. The default is 10.
+     *
+     * @param maxRequests The limit, or 0 for no limit.
+     */
+    public static void setMaxPathRequestsPerTick(int maxRequests) {
+        if (maxRequests < 0) {
+            throw new IllegalArgumentException("Max path requests cannot be negative.");
         }
-        return managedNpcs.values().stream()
-            .filter(Npc::isSpawned)
-            .filter(npc -> Objects.equals(npc.getLocation().getWorld(), location.getWorld()))
-            .min(Comparator.comparingDouble(npc -> npc.getLocation().distanceSquared(location)));
+        navigation.setMaxRequestsPerTick(maxRequests);
+    }
+
+    /**
+     * @return How many paths NPC behaviors requested, reused or postponed.
+     */
+    public static NpcNavigationStats getNavigationStats() {
+        return navigation.stats();
     }
 
     public static void despawnAll() {
@@ -145,50 +224,96 @@ public final class NpcAPI {
         });
     }
     
-    private static void loadNpcsFromFiles() {
-        if (!npcsFolder.exists()) npcsFolder.mkdirs();
-        if (!npcsFolder.isDirectory()) return;
-        
-        File[] files = npcsFolder.listFiles((dir, name) -> name.endsWith(".yml"));
-        if (files == null) return;
-        
-        int count = 0;
-        for (File npcFile : files) {
-            String fileName = npcFile.getName();
-            String uuidString = fileName.substring(0, fileName.length() - 4);
-            
-            try {
-                UUID flameId = UUID.fromString(uuidString);
-                Config npcConfig = ConfigAPI.getConfig("npcs/" + fileName);
-                
-                if (npcConfig.getRaw().getKeys(false).isEmpty() || !npcConfig.contains("name")) {
-                    plugin.getLogger().warning("Skipping malformed or empty NPC file: " + fileName);
-                    continue;
-                }
-                
-                Npc npc = NpcSerializer.deserialize(npcConfig, flameId);
-
-                if (npc != null && npc.getInitialSpawnLocation() != null) {
-                    npc.spawn();
-                    count++;
-                } else if (npc != null) {
-                    Config.ConfigLocation wrapper = npcConfig.getLocation("location");
-                    String worldName = (wrapper != null) ? wrapper.getWorldName() : "an unknown world";
-                    plugin.getLogger().warning("Could not spawn persistent NPC " + npc.getName() + " because its world ('" + worldName + "') is not loaded.");
+    /**
+     * Writes any pending NPC saves to disk and stops the store thread. This also happens automatically
+     * when the plugin passed to {@link #init(JavaPlugin)} is disabled, so calling it is only needed to save earlier.
+     */
+    public static void shutdown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Reads the saved NPCs off the main thread, then creates and spawns them a batch per tick,
+     * so thousands of persistent NPCs do not stall startup.
+     */
+    private static void loadNpcs() {
+        store.load().whenComplete((records, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Failed to load persistent NPCs.", error);
+                return;
+            }
+            if (records.isEmpty() || !plugin.isEnabled()) return;
+            Iterator<NpcRecord> pending = records.iterator();
+            new BukkitRunnable() {
+                private int count = 0;
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < SPAWN_BATCH_SIZE && pending.hasNext(); i++) {
+                        if (spawnRecord(pending.next())) {
+                            count++;
+                        }
+                    }
+                    if (!pending.hasNext()) {
+                        cancel();
+                        if (count > 0) {
+                            plugin.getLogger().info("Loaded and spawned " + count + " persistent NPCs.");
+                        }
+                    }
                 }
+            }.runTaskTimer(plugin, 1L, 1L);
+        });
+    }
 
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to load NPC from file: " + fileName);
+    private static boolean spawnRecord(NpcRecord record) {
+        // Already created since the load started, by a plugin or an earlier batch.
+        if (managedNpcs.containsKey(record.flameId)) return false;
+        try {
+            Npc npc = NpcSerializer.deserialize(record);
+            if (npc.getInitialSpawnLocation() != null) {
+                npc.spawn();
+                return true;
             }
+            String worldName = record.world != null ? record.world : "an unknown world";
+            plugin.getLogger().warning("Could not spawn persistent NPC " + npc.getName() + " because its world ('" + worldName + "') is not loaded.");
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load persistent NPC " + record.flameId + ".", e);
         }
-        if (count > 0) {
-            plugin.getLogger().info("Loaded and spawned " + count + " persistent NPCs from files.");
-        }
+        return false;
     }
 
     // --- Internal Package-Private Methods ---
     static JavaPlugin getPlugin() { return plugin; }
-    static File getNpcsFolder() { return npcsFolder; }
+    static NpcStore getStore() { return store; }
+    static NpcScheduler getScheduler() { return scheduler; }
+    static TargetIndex getTargetIndex() { return targetIndex; }
+    static NpcVisibility getVisibility() { return visibility; }
+    static NpcNavigation getNavigation() { return navigation; }
+    static void startGroup(NpcGroup group) { attackingGroups.add(group); }
+    static void stopGroup(NpcGroup group) { attackingGroups.remove(group); }
+
+    /**
+     * Re-indexes an NPC right away after it spawned, despawned or teleported, instead of on the next tick.
+     */
+    static void updateIndex(Npc npc) {
+        if (managedNpcs.containsKey(npc.getUniqueId())) {
+            grid.update(npc);
+            if (npc.hasVisibilityRules()) {
+                visibility.refresh(npc);
+            }
+        }
+    }
+
+    /**
+     * Re-applies an NPC's visibility rules to every player in its world after they changed.
+     */
+    static void updateVisibility(Npc npc) {
+        if (managedNpcs.containsKey(npc.getUniqueId())) {
+            visibility.refresh(npc);
+        }
+    }
     
     /**
      * *** FIX: UPDATED REGISTRATION LOGIC ***
@@ -212,7 +337,15 @@ public final class NpcAPI {
             UUID flameId = citizensToFlameMap.remove(citizensId);
             // 2. If a flameId was found, use it to remove from the main map.
             if (flameId != null) {
-                managedNpcs.remove(flameId);
+                Npc npc = managedNpcs.remove(flameId);
+                if (npc != null) {
+                    grid.remove(npc);
+                    scheduler.cancel(npc);
+                    visibility.remove(npc);
+                    if (npc.getGroup() != null) {
+                        npc.getGroup().remove(npc);
+                    }
+                }
             }
         }
     }
@@ -2,58 +2,26 @@ package com.arkflame.flamecore.npcapi;
 
 import com.arkflame.flamecore.npcapi.util.CitizensCompat;
 
-import org.bukkit.GameMode;
 import org.bukkit.entity.LivingEntity;
-import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
 
 /**
  * A self-contained task that manages an NPC actively attacking a single target.
- * This task runs every tick to provide fast and responsive combat.
+ * This task is ticked by the NpcScheduler, every tick by default, to provide fast and responsive combat.
  */
-class NpcAttackTask extends BukkitRunnable {
+class NpcAttackTask implements NpcTask {
     /**
      * Streamlines the set of checks to determine if an entity is a valid target.
      * This is used for filtering new targets and validating the current target.
      * An entity is valid if it's alive, not an ally, within range, and not in an
-     * invalid gamemode.
-     * This method is package-private so NpcAttackTask can access it.
+     * invalid gamemode. The checks that don't depend on the NPC are cached for the
+     * tick by the shared TargetIndex.
      *
      * @param entity The entity to check.
      * @return {@code true} if the entity is a valid target, {@code false}
      *         otherwise.
      */
     static boolean isValidTarget(Npc npc, LivingEntity entity, double radiusSquared) {
-        // Target must exist, be alive, and valid in the world.
-        if (entity == null || entity.isDead() || !entity.isValid()) {
-            return false;
-        }
-
-        // Target must not be the NPC itself.
-        if (entity.getUniqueId().equals(npc.getHandle().getEntity().getUniqueId())) {
-            return false;
-        }
-
-        // If the target is a player, check their gamemode.
-        if (entity instanceof Player) {
-            Player player = (Player) entity;
-            GameMode gameMode = player.getGameMode();
-            if (gameMode == GameMode.CREATIVE || gameMode == GameMode.SPECTATOR) {
-                return false;
-            }
-        }
-
-        // Target must not be an ally.
-        if (npc.isAlly(entity)) {
-            return false;
-        }
-
-        // Target must be within the defined radius.
-        if (entity.getLocation().distanceSquared(npc.getLocation()) > radiusSquared) {
-            return false;
-        }
-
-        return true; // All checks passed.
+        return NpcAPI.getTargetIndex().isValidTarget(npc, entity, radiusSquared);
     }
 
     private final Npc npc;
@@ -69,30 +37,28 @@ class NpcAttackTask extends BukkitRunnable {
     }
 
     @Override
-    public void run() {
+    public boolean tick(int elapsedTicks) {
         // Use the manager's centralized method to check for target validity.
         // If the NPC is despawned or the target is no longer valid for any reason...
         if (!npc.isSpawned() || !isValidTarget(npc, target, 50 * 50)) {
             if (npc.getBehavior() == Behavior.ATTACKING) {
                 npc.stopBehavior();
-            } else {
-                this.cancel();
             }
-            return;
+            return false;
         }
 
-        // Decrement cooldown timer
+        // Count the cooldown down by the ticks since the last run.
         if (attackCooldownTicks > 0) {
-            attackCooldownTicks--;
+            attackCooldownTicks = Math.max(0, attackCooldownTicks - elapsedTicks);
         }
 
         // Make the NPC always face its target
         CitizensCompat.faceLocation(npc.getHandle(), target.getEyeLocation());
 
         // Check if the NPC is within attack range (e.g., 3 blocks, squared to 9).
-        if (npc.getLocation().distanceSquared(target.getLocation()) < 9) {
+        if (NpcAPI.getTargetIndex().distanceSquared(npc, target) < 9) {
             // In range, stop navigating to engage.
-            npc.getHandle().getNavigator().cancelNavigation();
+            NpcAPI.getNavigation().cancel(npc);
 
             // Check if the attack is off cooldown.
             if (attackCooldownTicks <= 0) {
@@ -103,9 +69,10 @@ class NpcAttackTask extends BukkitRunnable {
                 attackCooldownTicks = npc.getHitFrequency();
             }
         } else {
-            // Out of range, navigate towards the target.
-            // The 'true' parameter means it will use pathfinding to get close.
-            npc.getHandle().getNavigator().setTarget(target, true);
+            // Out of range, navigate towards the target. Citizens follows the target itself,
+            // so a new path is only requested once it has moved away or the path is stale.
+            NpcAPI.getNavigation().chase(npc, target);
         }
+        return true;
     }
 }
\ No newline at end of file
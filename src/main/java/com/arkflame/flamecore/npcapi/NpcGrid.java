@@ -0,0 +1,180 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * A uniform grid of spawned NPCs per world, so proximity queries only look at the cells near the
+ * query point instead of every managed NPC.
+ * Positions are copied from the NPC entities when NpcAPI refreshes the grid, once per tick, so query
+ * results can be up to one tick old.
+ */
+final class NpcGrid {
+    // Cells are chunk-sized columns; heights are only compared by the exact distance check.
+    private static final int CELL_SHIFT = 4;
+    private static final double CELL_SIZE = 1 << CELL_SHIFT;
+
+    // World UID -> packed cell coordinates -> NPCs in that cell.
+    private final Map<UUID, Map<Long, List<Npc>>> worlds = new HashMap<>();
+
+    /**
+     * Moves an NPC to the cell of its current position, or removes it if it is not spawned.
+     */
+    void update(Npc npc) {
+        Entity entity = npc.isSpawned() ? npc.getHandle().getEntity() : null;
+        if (entity == null) {
+            remove(npc);
+            return;
+        }
+        // Reuses the NPC's scratch location instead of allocating one per refresh.
+        Location location = entity.getLocation(npc.gridScratch);
+        UUID worldId = location.getWorld().getUID();
+        long cell = cellKey(cell(location.getX()), cell(location.getZ()));
+        if (npc.gridWorld != null && (!npc.gridWorld.equals(worldId) || npc.gridCell != cell)) {
+            remove(npc);
+        }
+        if (npc.gridWorld == null) {
+            worlds.computeIfAbsent(worldId, id -> new HashMap<>())
+                    .computeIfAbsent(cell, c -> new ArrayList<>(4))
+                    .add(npc);
+            npc.gridWorld = worldId;
+            npc.gridCell = cell;
+        }
+        npc.gridX = location.getX();
+        npc.gridY = location.getY();
+        npc.gridZ = location.getZ();
+    }
+
+    void remove(Npc npc) {
+        if (npc.gridWorld == null) return;
+        Map<Long, List<Npc>> cells = worlds.get(npc.gridWorld);
+        if (cells != null) {
+            List<Npc> bucket = cells.get(npc.gridCell);
+            if (bucket != null && bucket.remove(npc) && bucket.isEmpty()) {
+                cells.remove(npc.gridCell);
+                if (cells.isEmpty()) {
+                    worlds.remove(npc.gridWorld);
+                }
+            }
+        }
+        npc.gridWorld = null;
+    }
+
+    /**
+     * @return The NPCs within the radius of the location, in no particular order.
+     */
+    List<Npc> getNearby(Location center, double radius) {
+        Map<Long, List<Npc>> cells = cellsOf(center.getWorld());
+        if (cells == null) return Collections.emptyList();
+        double radiusSquared = radius * radius;
+        int minX = cell(center.getX() - radius), maxX = cell(center.getX() + radius);
+        int minZ = cell(center.getZ() - radius), maxZ = cell(center.getZ() + radius);
+        List<Npc> result = new ArrayList<>();
+        // A large radius covers more cells than are occupied, and walking the occupied ones is cheaper.
+        if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > cells.size()) {
+            for (List<Npc> bucket : cells.values()) {
+                collect(bucket, center, radiusSquared, result);
+            }
+        } else {
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    List<Npc> bucket = cells.get(cellKey(x, z));
+                    if (bucket != null) {
+                        collect(bucket, center, radiusSquared, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Up to {@code count} NPCs in the location's world, nearest first.
+     */
+    List<Npc> getNearest(Location center, int count) {
+        Map<Long, List<Npc>> cells = cellsOf(center.getWorld());
+        if (cells == null || count <= 0) return Collections.emptyList();
+        // A max-heap of the best candidates so far, so the worst one is replaced first.
+        Comparator<Npc> nearestFirst = Comparator.comparingDouble(npc -> distanceSquared(npc, center));
+        PriorityQueue<Npc> best = new PriorityQueue<>(count, nearestFirst.reversed());
+        int centerX = cell(center.getX()), centerZ = cell(center.getZ());
+        int visitedCells = 0;
+        // Search rings of cells outwards. Every NPC outside ring r is at least r cells away horizontally.
+        for (int ring = 0; visitedCells < cells.size(); ring++) {
+            if (ring > 0 && 8L * ring > cells.size() - visitedCells) {
+                // The rings are now larger than the remaining occupied cells, so just check all of those.
+                best.clear();
+                for (List<Npc> bucket : cells.values()) {
+                    offer(bucket, center, count, best);
+                }
+                break;
+            }
+            for (int x = centerX - ring; x <= centerX + ring; x++) {
+                // Only the border of the ring; inner cells were visited by smaller rings.
+                int step = (x == centerX - ring || x == centerX + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int z = centerZ - ring; z <= centerZ + ring; z += step) {
+                    List<Npc> bucket = cells.get(cellKey(x, z));
+                    if (bucket != null) {
+                        visitedCells++;
+                        offer(bucket, center, count, best);
+                    }
+                }
+            }
+            double reach = ring * CELL_SIZE;
+            if (best.size() == count && distanceSquared(best.peek(), center) <= reach * reach) {
+                break;
+            }
+        }
+        List<Npc> result = new ArrayList<>(best);
+        result.sort(nearestFirst);
+        return result;
+    }
+
+    private Map<Long, List<Npc>> cellsOf(World world) {
+        return world == null ? null : worlds.get(world.getUID());
+    }
+
+    private static void collect(List<Npc> bucket, Location center, double radiusSquared, List<Npc> result) {
+        for (Npc npc : bucket) {
+            if (distanceSquared(npc, center) <= radiusSquared) {
+                result.add(npc);
+            }
+        }
+    }
+
+    private static void offer(List<Npc> bucket, Location center, int count, PriorityQueue<Npc> best) {
+        for (Npc npc : bucket) {
+            if (best.size() < count) {
+                best.add(npc);
+            } else if (distanceSquared(npc, center) < distanceSquared(best.peek(), center)) {
+                best.poll();
+                best.add(npc);
+            }
+        }
+    }
+
+    private static double distanceSquared(Npc npc, Location location) {
+        double dx = npc.gridX - location.getX();
+        double dy = npc.gridY - location.getY();
+        double dz = npc.gridZ - location.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long cellKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,228 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A squad of NPCs that fight together. While the group attacks, it assigns targets to all members at
+ * once, every 10 ticks, spreading them across the targets in range instead of letting every NPC pick
+ * the same nearest player. Members keep a target they already fight while it stays valid, and only
+ * steer towards and hit their assigned target in between, so large battles don't repeat target
+ * searches per NPC. An NPC can be in one group at a time. Must be used on the main thread.
+ */
+public final class NpcGroup {
+    private static final int ASSIGN_INTERVAL_TICKS = 10;
+
+    private final List<Npc> members = new ArrayList<>();
+    private double radius = 10;
+    private int maxAttackersPerTarget = 2;
+    private boolean attacking = false;
+    private int ticksUntilAssign = 0;
+
+    private NpcGroup() {
+    }
+
+    /**
+     * Creates a new, empty group.
+     */
+    public static NpcGroup create() {
+        return new NpcGroup();
+    }
+
+    /**
+     * Adds an NPC to this group, removing it from its previous group. If the group is attacking,
+     * the NPC joins the fight right away.
+     */
+    public void add(Npc npc) {
+        if (npc.group == this) return;
+        if (npc.group != null) {
+            npc.group.remove(npc);
+        }
+        npc.group = this;
+        members.add(npc);
+        if (attacking) {
+            startMember(npc);
+        }
+    }
+
+    /**
+     * Removes an NPC from this group. An NPC that was fighting for the group becomes idle.
+     */
+    public void remove(Npc npc) {
+        if (npc.group != this) return;
+        members.remove(npc);
+        npc.group = null;
+        if (attacking && npc.behavior == Behavior.GROUP_ATTACKING) {
+            npc.stopBehavior();
+        }
+    }
+
+    public List<Npc> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * Makes every member attack valid targets within 10 blocks of itself.
+     */
+    public void attackNearby() {
+        attackNearby(10);
+    }
+
+    /**
+     * Makes every member attack valid targets within a radius of itself. Fighting members report
+     * {@link Behavior#GROUP_ATTACKING}. Members given another behavior, e.g. with {@link Npc#attack(Entity)}
+     * or their own {@link Npc#attackNearby(double)}, leave the fight but stay in the group.
+     */
+    public void attackNearby(double radius) {
+        this.radius = radius;
+        this.attacking = true;
+        this.ticksUntilAssign = 0;
+        for (Npc npc : members) {
+            startMember(npc);
+        }
+        NpcAPI.startGroup(this);
+    }
+
+    /**
+     * Stops the members fighting for this group. They become idle.
+     */
+    public void stopBehavior() {
+        if (!attacking) return;
+        attacking = false;
+        NpcAPI.stopGroup(this);
+        for (Npc npc : members) {
+            if (npc.behavior == Behavior.GROUP_ATTACKING) {
+                npc.stopBehavior();
+            }
+        }
+    }
+
+    public boolean isAttacking() {
+        return attacking;
+    }
+
+    /**
+     * Sets how many members the group sends at one target while other targets are free.
+     * Once every target has that many attackers, the remaining members join the nearest one anyway.
+     * The default is 2.
+     */
+    public void setMaxAttackersPerTarget(int maxAttackers) {
+        if (maxAttackers < 1) {
+            throw new IllegalArgumentException("Max attackers per target must be at least 1.");
+        }
+        this.maxAttackersPerTarget = maxAttackers;
+    }
+
+    public int getMaxAttackersPerTarget() {
+        return maxAttackersPerTarget;
+    }
+
+    private void startMember(Npc npc) {
+        if (npc.isDecorative()) return;
+        npc.stopBehavior();
+        npc.behavior = Behavior.GROUP_ATTACKING;
+        NpcAPI.getScheduler().schedule(npc, new GroupMemberTask(npc, this));
+    }
+
+    /**
+     * Called by NpcAPI every tick while the group attacks, before the member behaviors run.
+     */
+    void tick() {
+        ticksUntilAssign--;
+        if (ticksUntilAssign > 0) return;
+        ticksUntilAssign = ASSIGN_INTERVAL_TICKS;
+
+        // Members still fighting for the group, by world. Suspended members are left alone.
+        Map<UUID, List<Npc>> fighters = new HashMap<>();
+        for (Npc npc : members) {
+            if (npc.behavior == Behavior.GROUP_ATTACKING && npc.gridWorld != null && npc.lodTier != LodTier.FAR) {
+                fighters.computeIfAbsent(npc.gridWorld, id -> new ArrayList<>()).add(npc);
+            }
+        }
+        for (List<Npc> worldFighters : fighters.values()) {
+            assignTargets(worldFighters, worldFighters.get(0).getHandle().getEntity().getWorld());
+        }
+    }
+
+    private void assignTargets(List<Npc> fighters, World world) {
+        TargetIndex index = NpcAPI.getTargetIndex();
+        double radiusSquared = radius * radius;
+
+        // Members never attack each other.
+        Set<Entity> memberEntities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Npc npc : members) {
+            if (npc.isSpawned()) {
+                memberEntities.add(npc.getHandle().getEntity());
+            }
+        }
+
+        // Every (member, target) pair in range, nearest first. Chunks are read once per tick for all members.
+        List<Pairing> pairings = new ArrayList<>();
+        for (Npc npc : fighters) {
+            index.forEachTarget(npc, world, radius, (target, distanceSquared) -> {
+                if (!memberEntities.contains(target)) {
+                    pairings.add(new Pairing(npc, target, distanceSquared));
+                }
+            });
+        }
+        pairings.sort((a, b) -> Double.compare(a.distanceSquared, b.distanceSquared));
+
+        Map<LivingEntity, Integer> attackers = new IdentityHashMap<>();
+        Set<Npc> assigned = Collections.newSetFromMap(new IdentityHashMap<>());
+        // 1. Members keep a valid target while it isn't over the limit, so they don't switch back and forth.
+        for (Npc npc : fighters) {
+            if (npc.targetEntity instanceof LivingEntity) {
+                LivingEntity target = (LivingEntity) npc.targetEntity;
+                if (!memberEntities.contains(target) && attackers.getOrDefault(target, 0) < maxAttackersPerTarget
+                        && index.isValidTarget(npc, target, radiusSquared)) {
+                    assign(npc, target, attackers, assigned);
+                }
+            }
+        }
+        // 2. The rest take the nearest target that still has room.
+        for (Pairing pairing : pairings) {
+            if (!assigned.contains(pairing.npc) && attackers.getOrDefault(pairing.target, 0) < maxAttackersPerTarget) {
+                assign(pairing.npc, pairing.target, attackers, assigned);
+            }
+        }
+        // 3. Every target is full; the remaining members join their nearest one anyway.
+        for (Pairing pairing : pairings) {
+            if (!assigned.contains(pairing.npc)) {
+                assign(pairing.npc, pairing.target, attackers, assigned);
+            }
+        }
+        for (Npc npc : fighters) {
+            if (!assigned.contains(npc)) {
+                npc.targetEntity = null;
+            }
+        }
+    }
+
+    private static void assign(Npc npc, LivingEntity target, Map<LivingEntity, Integer> attackers, Set<Npc> assigned) {
+        npc.targetEntity = target;
+        attackers.merge(target, 1, Integer::sum);
+        assigned.add(npc);
+    }
+
+    private static final class Pairing {
+        private final Npc npc;
+        private final LivingEntity target;
+        private final double distanceSquared;
+
+        Pairing(Npc npc, LivingEntity target, double distanceSquared) {
+            this.npc = npc;
+            this.target = target;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+}
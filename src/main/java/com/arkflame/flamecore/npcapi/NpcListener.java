@@ -13,6 +13,13 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
@@ -98,6 +105,61 @@ public class NpcListener implements Listener {
         });
     }
 
+    /**
+     * Re-evaluates NPC visibility when a player walks into another chunk. Moves within a chunk are ignored.
+     * Teleports have their own handler list in Bukkit and are handled below.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom(), to = event.getTo();
+        if (to == null || (from.getWorld() == to.getWorld()
+                && from.getBlockX() >> 4 == to.getBlockX() >> 4 && from.getBlockZ() >> 4 == to.getBlockZ() >> 4)) {
+            return;
+        }
+        NpcAPI.getVisibility().onPlayerMove(event.getPlayer(), to);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        if (event.getTo() != null) {
+            NpcAPI.getVisibility().onPlayerMove(event.getPlayer(), event.getTo());
+        }
+    }
+
+    /**
+     * Catches world changes that don't come through PlayerTeleportEvent, such as portals.
+     */
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        NpcAPI.getVisibility().onPlayerMove(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        NpcAPI.getVisibility().onPlayerMove(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        NpcAPI.getVisibility().onPlayerMove(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        NpcAPI.getVisibility().onPlayerQuit(event.getPlayer());
+    }
+
+    /**
+     * Writes pending NPC saves when the plugin that initialized NpcAPI is disabled, even if it never
+     * calls {@link NpcAPI#shutdown()}. The store thread is a daemon and would otherwise lose them.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        if (event.getPlugin() == NpcAPI.getPlugin()) {
+            NpcAPI.shutdown();
+        }
+    }
+
     @EventHandler
     public void onNpcRemove(NPCRemoveEvent event) {
         npcProtected.remove(event.getNPC().getUniqueId());
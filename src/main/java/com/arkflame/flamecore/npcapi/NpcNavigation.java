@@ -0,0 +1,123 @@
+package com.arkflame.flamecore.npcapi;
+
+import net.citizensnpcs.api.ai.Navigator;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides when NPC behaviors actually ask Citizens for a new path. Citizens keeps following an entity
+ * target on its own, so a behavior chasing one only re-paths once the target moved away from where it
+ * was when the path was requested, or the path is old enough to be worth refreshing. Requests that do
+ * reach Citizens are limited per tick across all NPCs. The rest keep their old path and wait in line; the
+ * next tick serves that line first, so NPCs the scheduler visits late in a tick are not starved.
+ */
+final class NpcNavigation {
+    // How far the target may move before the path is recomputed, squared.
+    private static final double REPATH_DISTANCE_SQUARED = 2.0 * 2.0;
+    // A path older than this is recomputed even if the target stood still, in case the NPC got stuck.
+    private static final int STALE_TICKS = 40;
+
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private int maxRequestsPerTick = 10;
+    private int requestsThisTick;
+    private long currentTick;
+    // NPCs whose request was deferred, oldest first, with the entity they were chasing.
+    private final Map<Npc, Entity> waiting = new LinkedHashMap<>();
+
+    private long requests;
+    private long cacheHits;
+    private long deferred;
+
+    /**
+     * Starts the next tick's request budget and spends it on the NPCs deferred earlier, oldest first.
+     * Called by NpcAPI before the behaviors run, whose chase calls then find those paths fresh.
+     */
+    void reset() {
+        currentTick++;
+        requestsThisTick = 0;
+        Iterator<Map.Entry<Npc, Entity>> iterator = waiting.entrySet().iterator();
+        while (iterator.hasNext() && !exhausted()) {
+            Map.Entry<Npc, Entity> entry = iterator.next();
+            iterator.remove();
+            Npc npc = entry.getKey();
+            Entity target = entry.getValue();
+            if (npc.isSpawned() && target.isValid()) {
+                request(npc, target, target.getLocation(scratch));
+            }
+        }
+    }
+
+    /**
+     * Makes an NPC chase an entity, re-pathing only when needed.
+     *
+     * @return false if a new path was needed but this tick's requests were used up.
+     */
+    boolean chase(Npc npc, Entity target) {
+        Navigator navigator = npc.getHandle().getNavigator();
+        Location location = target.getLocation(scratch);
+        if (npc.navTarget == target && navigator.isNavigating() && currentTick - npc.navTick < STALE_TICKS
+                && location.getWorld().getUID().equals(npc.navWorld)) {
+            double dx = location.getX() - npc.navX, dy = location.getY() - npc.navY, dz = location.getZ() - npc.navZ;
+            if (dx * dx + dy * dy + dz * dz <= REPATH_DISTANCE_SQUARED) {
+                cacheHits++;
+                return true;
+            }
+        }
+        if (exhausted()) {
+            // Re-deferring keeps the NPC's place in line, and replaces the target it wanted.
+            waiting.put(npc, target);
+            deferred++;
+            return false;
+        }
+        // Nobody is waiting here: reset() only leaves NPCs in line once the budget is used up.
+        request(npc, target, location);
+        return true;
+    }
+
+    private boolean exhausted() {
+        return maxRequestsPerTick > 0 && requestsThisTick >= maxRequestsPerTick;
+    }
+
+    private void request(Npc npc, Entity target, Location location) {
+        requestsThisTick++;
+        requests++;
+        npc.getHandle().getNavigator().setTarget(target, true);
+        npc.navTarget = target;
+        npc.navWorld = location.getWorld().getUID();
+        npc.navX = location.getX();
+        npc.navY = location.getY();
+        npc.navZ = location.getZ();
+        npc.navTick = currentTick;
+    }
+
+    /**
+     * Stops an NPC's navigation, if it has any, and forgets its path.
+     */
+    void cancel(Npc npc) {
+        npc.navTarget = null;
+        waiting.remove(npc);
+        if (npc.isSpawned() && npc.getHandle().getNavigator().isNavigating()) {
+            npc.getHandle().getNavigator().cancelNavigation();
+        }
+    }
+
+    /**
+     * Forgets an NPC's path without touching its navigator, after something else gave it a new destination.
+     */
+    void forget(Npc npc) {
+        npc.navTarget = null;
+        waiting.remove(npc);
+    }
+
+    void setMaxRequestsPerTick(int maxRequestsPerTick) {
+        this.maxRequestsPerTick = maxRequestsPerTick;
+    }
+
+    NpcNavigationStats stats() {
+        return new NpcNavigationStats(requests, cacheHits, deferred, maxRequestsPerTick);
+    }
+}
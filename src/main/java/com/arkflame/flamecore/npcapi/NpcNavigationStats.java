@@ -0,0 +1,41 @@
+package com.arkflame.flamecore.npcapi;
+
+/**
+ * An immutable snapshot of NPC path requests since the server started.
+ */
+public final class NpcNavigationStats {
+    private final long pathRequests;
+    private final long cacheHits;
+    private final long deferredRequests;
+    private final int maxRequestsPerTick;
+
+    public NpcNavigationStats(long pathRequests, long cacheHits, long deferredRequests, int maxRequestsPerTick) {
+        this.pathRequests = pathRequests;
+        this.cacheHits = cacheHits;
+        this.deferredRequests = deferredRequests;
+        this.maxRequestsPerTick = maxRequestsPerTick;
+    }
+
+    /** The number of paths requested from Citizens. */
+    public long getPathRequests() { return pathRequests; }
+    /** The number of times a behavior kept its current path because the target had barely moved. */
+    public long getCacheHits() { return cacheHits; }
+    /** The number of path requests postponed to a later tick because the per-tick limit was reached. */
+    public long getDeferredRequests() { return deferredRequests; }
+    /** The per-tick path request limit, or 0 if unlimited. */
+    public int getMaxRequestsPerTick() { return maxRequestsPerTick; }
+
+    /**
+     * @return The share of navigation checks that reused the current path, between 0 and 1.
+     */
+    public double getCacheHitRate() {
+        long total = pathRequests + cacheHits;
+        return total == 0 ? 0 : (double) cacheHits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NpcNavigationStats{requests=%d, cacheHits=%d (%.1f%%), deferred=%d, maxPerTick=%d}",
+                pathRequests, cacheHits, getCacheHitRate() * 100, deferredRequests, maxRequestsPerTick);
+    }
+}
@@ -0,0 +1,119 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.Location;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * The saved data of one persistent NPC. Records are immutable snapshots, so the store can
+ * write them from its own thread while the NPC keeps changing on the main thread.
+ */
+final class NpcRecord {
+    final UUID flameId;
+    final String name;
+    final String entityType;
+    final String skin;
+    // The location is kept by world name, because worlds are only resolved on the main thread.
+    final String world;
+    final double x, y, z;
+    final float yaw, pitch;
+    final int respawnTime;
+    final int noDamageTicks;
+    final int hitFrequency;
+    final boolean decorative;
+    final int viewDistance;
+
+    NpcRecord(UUID flameId, String name, String entityType, String skin, String world,
+              double x, double y, double z, float yaw, float pitch,
+              int respawnTime, int noDamageTicks, int hitFrequency, boolean decorative, int viewDistance) {
+        this.flameId = flameId;
+        this.name = name;
+        this.entityType = entityType;
+        this.skin = skin;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.yaw = yaw;
+        this.pitch = pitch;
+        this.respawnTime = respawnTime;
+        this.noDamageTicks = noDamageTicks;
+        this.hitFrequency = hitFrequency;
+        this.decorative = decorative;
+        this.viewDistance = viewDistance;
+    }
+
+    static NpcRecord of(UUID flameId, String name, String entityType, String skin, Location location,
+                        int respawnTime, int noDamageTicks, int hitFrequency, boolean decorative, int viewDistance) {
+        if (location == null || location.getWorld() == null) {
+            return new NpcRecord(flameId, name, entityType, skin, null, 0, 0, 0, 0, 0,
+                    respawnTime, noDamageTicks, hitFrequency, decorative, viewDistance);
+        }
+        return new NpcRecord(flameId, name, entityType, skin, location.getWorld().getName(),
+                location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch(),
+                respawnTime, noDamageTicks, hitFrequency, decorative, viewDistance);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(flameId.getMostSignificantBits());
+        out.writeLong(flameId.getLeastSignificantBits());
+        out.writeUTF(name);
+        out.writeUTF(entityType);
+        writeNullable(out, skin);
+        writeNullable(out, world);
+        if (world != null) {
+            out.writeDouble(x);
+            out.writeDouble(y);
+            out.writeDouble(z);
+            out.writeFloat(yaw);
+            out.writeFloat(pitch);
+        }
+        out.writeInt(respawnTime);
+        out.writeInt(noDamageTicks);
+        out.writeInt(hitFrequency);
+        out.writeBoolean(decorative);
+        out.writeInt(viewDistance);
+    }
+
+    /**
+     * Reads a record written by {@link #write}, or by an older store version.
+     */
+    static NpcRecord read(DataInput in, int version) throws IOException {
+        UUID flameId = new UUID(in.readLong(), in.readLong());
+        String name = in.readUTF();
+        String entityType = in.readUTF();
+        String skin = readNullable(in);
+        String world = readNullable(in);
+        double x = 0, y = 0, z = 0;
+        float yaw = 0, pitch = 0;
+        if (world != null) {
+            x = in.readDouble();
+            y = in.readDouble();
+            z = in.readDouble();
+            yaw = in.readFloat();
+            pitch = in.readFloat();
+        }
+        int respawnTime = in.readInt();
+        int noDamageTicks = in.readInt();
+        int hitFrequency = in.readInt();
+        // Version 1 had no decorative NPCs.
+        boolean decorative = version >= 2 && in.readBoolean();
+        int viewDistance = version >= 2 ? in.readInt() : -1;
+        return new NpcRecord(flameId, name, entityType, skin, world, x, y, z, yaw, pitch,
+                respawnTime, noDamageTicks, hitFrequency, decorative, viewDistance);
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,243 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Runs the behavior of every NPC from a single task that NpcAPI ticks once per server tick.
+ * Each NPC has at most one task. It runs every {@link Npc#getTickInterval()} ticks, and NPCs with the
+ * same interval are spread across ticks instead of all running on the same one. Once the tick budget
+ * is used up, the remaining due tasks are deferred to the next tick, which resumes where this one stopped.
+ * Every second, each NPC's {@link LodTier} is re-evaluated from its distance to the nearest player, which
+ * slows down or suspends the tasks of NPCs that no player is close to.
+ */
+final class NpcScheduler {
+    private static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int LOD_CHECK_INTERVAL_TICKS = 20;
+
+    private final Map<Npc, Entry> entries = new HashMap<>();
+    // Round-robin order. Cancelled entries are compacted away at the start of the next tick.
+    private final List<Entry> queue = new ArrayList<>();
+    private boolean hasCancelled;
+    private int cursor;
+    private long currentTick;
+    private long budgetNanos = DEFAULT_BUDGET_NANOS;
+
+    private int lastTickRan;
+    private long lastTickNanos;
+    private long maxTickNanos;
+    private long overBudgetTicks;
+
+    // Player positions per world, captured at most once per tick for LOD checks.
+    private final Map<UUID, Positions> playerPositions = new HashMap<>();
+    private final Location playerScratch = new Location(null, 0, 0, 0);
+    private long playersCapturedTick = -1;
+
+    /**
+     * Replaces the NPC's current task. The task first runs on the next tick, or within its interval if the
+     * NPC ticks less often than every tick.
+     */
+    void schedule(Npc npc, NpcTask task) {
+        cancel(npc);
+        Entry entry = new Entry(npc, task);
+        int interval = npc.getTickInterval();
+        int hash = npc.getUniqueId().hashCode() & Integer.MAX_VALUE;
+        entry.lastTick = currentTick;
+        // Staggers NPCs with the same interval so they don't all run on the same tick.
+        entry.nextTick = currentTick + 1 + (interval > 1 ? hash % interval : 0);
+        // The tier is evaluated on the first visit, then once per LOD interval at this phase.
+        entry.lodPhase = hash % LOD_CHECK_INTERVAL_TICKS;
+        entry.nextLodCheck = currentTick + 1;
+        entries.put(npc, entry);
+        queue.add(entry);
+    }
+
+    void cancel(Npc npc) {
+        Entry entry = entries.remove(npc);
+        if (entry != null) {
+            entry.cancelled = true;
+            hasCancelled = true;
+            npc.lodTier = LodTier.NEAR;
+        }
+    }
+
+    /**
+     * @param budgetNanos The time all tasks may take per tick, or 0 for no limit.
+     */
+    void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    NpcTickStats stats() {
+        int mid = 0, far = 0;
+        for (Npc npc : entries.keySet()) {
+            if (npc.lodTier == LodTier.MID) mid++;
+            else if (npc.lodTier == LodTier.FAR) far++;
+        }
+        return new NpcTickStats(entries.size(), mid, far, lastTickRan, lastTickNanos / 1e6, maxTickNanos / 1e6, overBudgetTicks);
+    }
+
+    void tick() {
+        currentTick++;
+        if (hasCancelled) {
+            compact();
+        }
+        long start = System.nanoTime();
+        long deadline = budgetNanos > 0 ? start + budgetNanos : Long.MAX_VALUE;
+        // Tasks scheduled by a running task are appended, and first run on a later tick anyway.
+        int count = queue.size();
+        int index = cursor;
+        int ran = 0;
+        for (int visited = 0; visited < count; visited++, index++) {
+            if (index >= count) index = 0;
+            Entry entry = queue.get(index);
+            if (entry.cancelled) continue;
+            if (entry.nextLodCheck <= currentTick) {
+                updateTier(entry);
+            }
+            if (entry.nextTick > currentTick) continue;
+            if (ran > 0 && System.nanoTime() >= deadline) {
+                // Out of budget: this and the remaining due tasks run first on the next tick.
+                cursor = index;
+                overBudgetTicks++;
+                break;
+            }
+            run(entry);
+            ran++;
+        }
+        lastTickRan = ran;
+        lastTickNanos = System.nanoTime() - start;
+        maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+    }
+
+    private void run(Entry entry) {
+        int elapsed = (int) Math.min(Integer.MAX_VALUE, currentTick - entry.lastTick);
+        entry.lastTick = currentTick;
+        entry.nextTick = currentTick + interval(entry.npc);
+        boolean keep;
+        try {
+            keep = entry.task.tick(elapsed);
+        } catch (RuntimeException e) {
+            NpcAPI.getPlugin().getLogger().log(Level.WARNING, "NPC '" + entry.npc.getName() + "' behavior failed and was stopped.", e);
+            keep = false;
+        }
+        // The task may have replaced itself, e.g. by calling attack() on its NPC.
+        if (!keep && entries.get(entry.npc) == entry) {
+            cancel(entry.npc);
+        }
+    }
+
+    /**
+     * Re-evaluates an NPC's tier. Suspended tasks resume right away when a player comes closer.
+     */
+    private void updateTier(Entry entry) {
+        long offset = Math.floorMod(entry.lodPhase - currentTick, (long) LOD_CHECK_INTERVAL_TICKS);
+        entry.nextLodCheck = currentTick + (offset == 0 ? LOD_CHECK_INTERVAL_TICKS : offset);
+        Npc npc = entry.npc;
+        LodTier previous = npc.lodTier;
+        npc.lodTier = tierOf(npc);
+        if (npc.lodTier == previous) return;
+        if (npc.lodTier == LodTier.FAR) {
+            entry.nextTick = Long.MAX_VALUE;
+        } else {
+            entry.nextTick = Math.min(previous == LodTier.FAR ? currentTick : entry.nextTick, entry.lastTick + interval(npc));
+        }
+    }
+
+    private LodTier tierOf(Npc npc) {
+        // NPCs that are not indexed are despawned; let their task run so it can finish.
+        if (npc.gridWorld == null) return LodTier.NEAR;
+        if (playersCapturedTick != currentTick) {
+            capturePlayers();
+        }
+        Positions players = playerPositions.get(npc.gridWorld);
+        double nearestSquared = players == null ? Double.MAX_VALUE : players.nearestSquared(npc.gridX, npc.gridY, npc.gridZ);
+        double near = npc.getLodNearDistance();
+        double far = npc.getLodFarDistance();
+        if (nearestSquared <= near * near) return LodTier.NEAR;
+        return nearestSquared <= far * far ? LodTier.MID : LodTier.FAR;
+    }
+
+    private int interval(Npc npc) {
+        return npc.lodTier == LodTier.MID ? Math.max(npc.getTickInterval(), npc.getMidTickInterval()) : npc.getTickInterval();
+    }
+
+    private void capturePlayers() {
+        playersCapturedTick = currentTick;
+        for (Positions positions : playerPositions.values()) {
+            positions.count = 0;
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation(playerScratch);
+            playerPositions.computeIfAbsent(location.getWorld().getUID(), id -> new Positions())
+                    .add(location.getX(), location.getY(), location.getZ());
+        }
+    }
+
+    private void compact() {
+        int write = 0;
+        int newCursor = 0;
+        for (int read = 0; read < queue.size(); read++) {
+            if (read == cursor) newCursor = write;
+            Entry entry = queue.get(read);
+            if (!entry.cancelled) {
+                queue.set(write++, entry);
+            }
+        }
+        queue.subList(write, queue.size()).clear();
+        cursor = newCursor < write ? newCursor : 0;
+        hasCancelled = false;
+    }
+
+    private static final class Entry {
+        private final Npc npc;
+        private final NpcTask task;
+        private long lastTick;
+        private long nextTick;
+        private long nextLodCheck;
+        private int lodPhase;
+        private boolean cancelled;
+
+        Entry(Npc npc, NpcTask task) {
+            this.npc = npc;
+            this.task = task;
+        }
+    }
+
+    /**
+     * A reusable array of x, y, z triples.
+     */
+    private static final class Positions {
+        private double[] coordinates = new double[48];
+        private int count;
+
+        void add(double x, double y, double z) {
+            if (count * 3 == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[count * 3] = x;
+            coordinates[count * 3 + 1] = y;
+            coordinates[count * 3 + 2] = z;
+            count++;
+        }
+
+        double nearestSquared(double x, double y, double z) {
+            double nearest = Double.MAX_VALUE;
+            for (int i = 0; i < count * 3; i += 3) {
+                double dx = coordinates[i] - x, dy = coordinates[i + 1] - y, dz = coordinates[i + 2] - z;
+                nearest = Math.min(nearest, dx * dx + dy * dy + dz * dz);
+            }
+            return nearest;
+        }
+    }
+}
@@ -1,92 +1,75 @@
 package com.arkflame.flamecore.npcapi;
 
-import com.arkflame.flamecore.configapi.Config;
-import com.arkflame.flamecore.configapi.Config.ConfigLocation;
-import com.arkflame.flamecore.configapi.ConfigAPI;
 import com.arkflame.flamecore.npcapi.util.CitizensCompat;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCRegistry;
 import net.citizensnpcs.api.trait.trait.Owner;
 import net.citizensnpcs.trait.LookClose;
 import net.citizensnpcs.trait.SkinTrait;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.EntityType;
 
-import java.util.UUID;
-
 /**
  * The definitive serializer for Npc objects. It handles saving our custom data
  * and creating fresh Citizens NPCs from that data on load.
  */
 class NpcSerializer {
-    
-    public static void serialize(Npc npc) {
-        // The file is named after our FlameCore UUID.
-        Config config = ConfigAPI.getConfig("npcs/" + npc.getUniqueId() + ".yml");
-        
+
+    /**
+     * Copies the saved fields of an NPC into a record the store can write from its own thread.
+     * Must be called on the main thread.
+     */
+    public static NpcRecord serialize(Npc npc) {
         // We no longer need to save the Citizens UUID. It's truly temporary.
-        config.set("name", npc.getName());
-        config.set("entity-type", npc.getEntityType().name());
-        
+        String skin = null;
         if (npc.getHandle().hasTrait(SkinTrait.class)) {
-            config.set("skin", npc.getHandle().getTrait(SkinTrait.class).getSkinName());
-        }
-        
-        if (npc.getInitialSpawnLocation() != null) {
-            config.setLocation("location", npc.getInitialSpawnLocation());
+            skin = npc.getHandle().getTrait(SkinTrait.class).getSkinName();
         }
-        
-        config.set("respawn-time", npc.getRespawnTime());
-        config.set("no-damage-ticks", npc.getNoDamageTicks());
-        config.set("hit-frequency", npc.getHitFrequency());
-        
-        config.save();
+        return NpcRecord.of(npc.getUniqueId(), npc.getName(), npc.getEntityType().name(), skin,
+                npc.getInitialSpawnLocation(), npc.getRespawnTime(), npc.getNoDamageTicks(), npc.getHitFrequency(),
+                npc.isDecorative(), npc.getViewDistance());
     }
-    
-    public static Npc deserialize(Config config, UUID flameId) {
-        System.out.println("[NPC DEBUG] Attempting to deserialize NPC with FlameID: " + flameId);
-        
-        String name = config.getString("name");
-        if (name == null) {
-            System.out.println("[NPC DEBUG] Deserialization FAILED: 'name' is missing in " + flameId + ".yml");
-            return null;
-        }
-            
+
+    /**
+     * Creates and registers the NPC described by a record. Must be called on the main thread.
+     */
+    public static Npc deserialize(NpcRecord record) {
         EntityType type = EntityType.PLAYER;
-        if (config.getRaw().contains("entity-type")) {
-            try { type = EntityType.valueOf(config.getRaw().getString("entity-type")); } catch (Exception ignored) {}
-        }
+        try { type = EntityType.valueOf(record.entityType); } catch (Exception ignored) {}
 
         NPCRegistry registry = CitizensCompat.getTemporaryNPCRegistry();
-        NPC citizensNpc = registry.createNPC(type, name);
+        NPC citizensNpc = registry.createNPC(type, record.name);
 
-        // --- THE DEFINITIVE FIX ---
-        // 1. Create the wrapper.
-        Npc npc = new Npc(citizensNpc, flameId);
-        
-        // 2. IMMEDIATELY register it with the API's central map.
-        // This was the missing, critical step.
+        // Create the wrapper and register it with the API's central map right away.
+        Npc npc = new Npc(citizensNpc, record.flameId);
         NpcAPI.registerNpc(npc);
-        System.out.println("[NPC DEBUG] NPC Wrapper CREATED and REGISTERED in NpcAPI map. Name: " + name + ", FlameID: " + flameId);
-        
+
         // --- Apply all our custom data ---
         npc.setPersistent(true);
-        if (config.getRaw().contains("skin")) {
-            npc.getHandle().getOrAddTrait(SkinTrait.class).setSkinName(config.getRaw().getString("skin"), true);
+        if (record.skin != null) {
+            npc.getHandle().getOrAddTrait(SkinTrait.class).setSkinName(record.skin, true);
         }
-        if (config.contains("location")) {
-            ConfigLocation wrapper = config.getLocation("location");
-            if (wrapper != null) {
-                npc.setInitialSpawnLocation(wrapper.toLocation());
+        World world = record.world == null ? null : Bukkit.getWorld(record.world);
+        if (world != null) {
+            npc.setInitialSpawnLocation(new Location(world, record.x, record.y, record.z, record.yaw, record.pitch));
+        }
+        npc.setRespawnTime(record.respawnTime);
+        npc.setNoDamageTicks(record.noDamageTicks);
+        npc.setHitFrequency(record.hitFrequency);
+
+        if (record.decorative) {
+            npc.makeDecorative(record.viewDistance);
+        } else {
+            npc.getHandle().setProtected(false);
+            if (record.viewDistance > 0) {
+                npc.setViewDistance(record.viewDistance);
             }
         }
-        npc.setRespawnTime(config.getRaw().getInt("respawn-time", -1));
-        npc.setNoDamageTicks(config.getRaw().getInt("no-damage-ticks", 10));
-        npc.setHitFrequency(config.getRaw().getInt("hit-frequency", 10));
-        
-        npc.getHandle().setProtected(false);
         npc.getHandle().getOrAddTrait(Owner.class).setOwner(npc.getName());
         npc.getHandle().getOrAddTrait(LookClose.class).lookClose(true);
 
         return npc;
     }
-}
\ No newline at end of file
+}
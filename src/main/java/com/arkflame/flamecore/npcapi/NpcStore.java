@@ -0,0 +1,222 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps every persistent NPC in a single binary file, indexed in memory by FlameCore UUID.
+ * Reading and writing happen on one background thread. Saves and deletes only update the index;
+ * the file is rewritten once per flush delay, however many NPCs changed in between.
+ */
+final class NpcStore {
+    private static final int MAGIC = 0x464E5043; // "FNPC"
+    private static final int VERSION = 2;
+    private static final long FLUSH_DELAY_MILLIS = 1000L;
+
+    private final File file;
+    private final File legacyFolder;
+    private final Logger logger;
+    private final Map<UUID, NpcRecord> records = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Set when a damaged store file could not be moved aside. Writing would replace the NPCs that were not read.
+    private volatile boolean readOnly = false;
+    private final ScheduledExecutorService executor;
+
+    NpcStore(File file, File legacyFolder, Logger logger) {
+        this.file = file;
+        this.legacyFolder = legacyFolder;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FlameCore-NpcStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the store file, and any NPC files left over from the one-file-per-NPC format, off the main thread.
+     * Legacy files are written into the store and their folder is renamed, so they are only migrated once.
+     */
+    CompletableFuture<List<NpcRecord>> load() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (file.exists()) {
+                readFile();
+            }
+            int migrated = migrateLegacyFiles();
+            // The old files are only moved away once the store holding them has been written.
+            if (migrated > 0 && flush()) {
+                File renamed = new File(legacyFolder.getParentFile(), legacyFolder.getName() + ".migrated");
+                if (legacyFolder.renameTo(renamed)) {
+                    logger.info("Migrated " + migrated + " NPC files into " + file.getName()
+                            + ". The old files were moved to " + renamed.getName() + ".");
+                }
+            }
+            return new ArrayList<>(records.values());
+        }, executor);
+    }
+
+    /**
+     * Saves or replaces a record. The file is written on the next flush.
+     */
+    void put(NpcRecord record) {
+        records.put(record.flameId, record);
+        scheduleFlush();
+    }
+
+    void remove(UUID flameId) {
+        if (records.remove(flameId) != null) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes pending changes and stops the store thread. Blocks for at most a few seconds.
+     */
+    void close() {
+        if (executor.isShutdown()) return;
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out while saving NPCs to " + file.getName() + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closed; the final flush has already been queued or run.
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private boolean flush() {
+        // Cleared first, so a change made while writing schedules another flush.
+        flushScheduled.set(false);
+        if (readOnly) return false;
+        List<NpcRecord> snapshot = new ArrayList<>(records.values());
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (NpcRecord record : snapshot) {
+                    record.write(out);
+                }
+            }
+            // Replacing the file in one step means a crash never leaves a half-written store behind.
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save NPCs to " + file.getName() + ". Retrying on the next change.", e);
+            return false;
+        }
+    }
+
+    private void readFile() {
+        String problem;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version;
+            if (in.readInt() != MAGIC) {
+                problem = file.getName() + " is not an NPC store. No NPCs were loaded from it.";
+            } else if ((version = in.readInt()) < 1 || version > VERSION) {
+                problem = file.getName() + " has unsupported version " + version + ". No NPCs were loaded from it.";
+            } else {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    NpcRecord record = NpcRecord.read(in, version);
+                    records.putIfAbsent(record.flameId, record);
+                }
+                return;
+            }
+        } catch (EOFException e) {
+            problem = file.getName() + " is truncated. Loaded the " + records.size() + " NPCs before the damaged part.";
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read NPCs from " + file.getName() + ".", e);
+            problem = "Failed to read NPCs from " + file.getName() + ".";
+        }
+        moveAside(problem);
+    }
+
+    /**
+     * Keeps a store file that could not be fully read, since the next flush would replace it with only
+     * the NPCs that were read. If it cannot be moved, nothing is written until the server restarts.
+     */
+    private void moveAside(String problem) {
+        File aside = new File(file.getParentFile(), file.getName() + ".corrupt-" + System.currentTimeMillis());
+        if (file.renameTo(aside)) {
+            logger.warning(problem + " The file was moved to " + aside.getName() + ".");
+        } else {
+            readOnly = true;
+            logger.severe(problem + " The file could not be moved aside, so NPC changes will not be saved until it is fixed or removed.");
+        }
+    }
+
+    private int migrateLegacyFiles() {
+        File[] files = legacyFolder.isDirectory() ? legacyFolder.listFiles((dir, name) -> name.endsWith(".yml")) : null;
+        if (files == null) return 0;
+        int migrated = 0;
+        for (File npcFile : files) {
+            String fileName = npcFile.getName();
+            try {
+                UUID flameId = UUID.fromString(fileName.substring(0, fileName.length() - 4));
+                YamlConfiguration config = YamlConfiguration.loadConfiguration(npcFile);
+                String name = config.getString("name");
+                if (name == null) {
+                    logger.warning("Skipping malformed or empty NPC file: " + fileName);
+                    continue;
+                }
+                ConfigurationSection location = config.getConfigurationSection("location");
+                String world = location == null ? null : location.getString("world");
+                NpcRecord record = new NpcRecord(flameId, name, config.getString("entity-type", "PLAYER"),
+                        config.getString("skin"), world,
+                        world == null ? 0 : location.getDouble("x"),
+                        world == null ? 0 : location.getDouble("y"),
+                        world == null ? 0 : location.getDouble("z"),
+                        world == null ? 0 : (float) location.getDouble("yaw"),
+                        world == null ? 0 : (float) location.getDouble("pitch"),
+                        config.getInt("respawn-time", -1), config.getInt("no-damage-ticks", 10),
+                        config.getInt("hit-frequency", 10), false, -1);
+                if (records.putIfAbsent(flameId, record) == null) {
+                    migrated++;
+                }
+            } catch (Exception e) {
+                logger.warning("Failed to load NPC from file: " + fileName);
+            }
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,16 @@
+package com.arkflame.flamecore.npcapi;
+
+/**
+ * A unit of NPC behavior that is ticked by the {@link NpcScheduler} instead of running as its own Bukkit task.
+ */
+interface NpcTask {
+    /**
+     * Advances the behavior. Called on the main thread.
+     *
+     * @param elapsedTicks The server ticks since this task last ran, at least 1. Tasks of NPCs with a tick
+     *                     interval, or that were deferred by the tick budget, run less often than every tick,
+     *                     so cooldowns must be counted down by this amount.
+     * @return {@code false} once the task is finished and should be removed.
+     */
+    boolean tick(int elapsedTicks);
+}
@@ -0,0 +1,43 @@
+package com.arkflame.flamecore.npcapi;
+
+/**
+ * An immutable snapshot of the NPC behavior scheduler.
+ */
+public final class NpcTickStats {
+    private final int activeTasks;
+    private final int midTasks;
+    private final int suspendedTasks;
+    private final int lastTickRan;
+    private final double lastTickMillis;
+    private final double maxTickMillis;
+    private final long overBudgetTicks;
+
+    public NpcTickStats(int activeTasks, int midTasks, int suspendedTasks, int lastTickRan, double lastTickMillis, double maxTickMillis, long overBudgetTicks) {
+        this.activeTasks = activeTasks;
+        this.midTasks = midTasks;
+        this.suspendedTasks = suspendedTasks;
+        this.lastTickRan = lastTickRan;
+        this.lastTickMillis = lastTickMillis;
+        this.maxTickMillis = maxTickMillis;
+        this.overBudgetTicks = overBudgetTicks;
+    }
+
+    /** The number of NPCs with a running behavior. */
+    public int getActiveTasks() { return activeTasks; }
+    /** The number of running behaviors slowed down because the nearest player is at mid range. */
+    public int getMidTasks() { return midTasks; }
+    /** The number of running behaviors suspended because no player is in range. */
+    public int getSuspendedTasks() { return suspendedTasks; }
+    /** The number of behaviors that ran in the last tick. */
+    public int getLastTickRan() { return lastTickRan; }
+    public double getLastTickMillis() { return lastTickMillis; }
+    public double getMaxTickMillis() { return maxTickMillis; }
+    /** The number of ticks that ran out of budget and deferred behaviors to the next tick. */
+    public long getOverBudgetTicks() { return overBudgetTicks; }
+
+    @Override
+    public String toString() {
+        return String.format("NpcTickStats{tasks=%d, mid=%d, suspended=%d, ran=%d, last=%.2fms, max=%.2fms, overBudget=%d}",
+                activeTasks, midTasks, suspendedTasks, lastTickRan, lastTickMillis, maxTickMillis, overBudgetTicks);
+    }
+}
@@ -0,0 +1,218 @@
+package com.arkflame.flamecore.npcapi;
+
+import com.arkflame.flamecore.npcapi.util.CitizensCompat;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Applies per-NPC visibility rules (permission, viewer set, max viewers, distance) to players.
+ * Only NPCs with at least one rule are tracked. A player is re-evaluated when they join, cross into
+ * another chunk or teleport, and only against the restricted NPCs near them or currently shown to them.
+ * Hidden NPCs are hidden through Bukkit's entity visibility, so the server sends that player nothing for them.
+ */
+final class NpcVisibility {
+    // Used for NPCs without a view distance, close to the default player tracking range.
+    static final double DEFAULT_RANGE = 64;
+
+    private final NpcGrid grid;
+    private final Set<Npc> restricted = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Player UUID -> restricted NPCs currently counted as viewed by that player.
+    private final Map<UUID, Set<Npc>> shownByPlayer = new HashMap<>();
+    // The largest range of any restricted NPC, so one grid query finds every NPC a player may be in range of.
+    private double queryRadius = DEFAULT_RANGE;
+    private final Location scratch = new Location(null, 0, 0, 0);
+
+    NpcVisibility(NpcGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Re-evaluates an NPC for every player in its world, after its rules changed or it spawned or teleported.
+     * An NPC whose rules were all removed is shown to everyone again.
+     */
+    void refresh(Npc npc) {
+        if (!npc.hasVisibilityRules()) {
+            if (restricted.remove(npc)) {
+                release(npc);
+            }
+            return;
+        }
+        restricted.add(npc);
+        queryRadius = Math.max(queryRadius, range(npc));
+        // Viewer slots are handed out again from scratch, so tightened limits apply right away.
+        for (UUID viewer : npc.shownTo) {
+            unlink(viewer, npc);
+        }
+        npc.shownTo.clear();
+        World world = npc.gridWorld == null ? null : Bukkit.getWorld(npc.gridWorld);
+        if (world == null) return;
+        for (Player player : world.getPlayers()) {
+            evaluate(npc, player, player.getLocation(scratch), null);
+        }
+    }
+
+    /**
+     * Re-evaluates a player that joined, moved into another chunk or teleported.
+     */
+    void onPlayerMove(Player player, Location to) {
+        Set<Npc> shown = shownByPlayer.get(player.getUniqueId());
+        if (shown != null) {
+            // The player may have left the range of, or lost permission for, NPCs they could see.
+            for (Npc npc : new ArrayList<>(shown)) {
+                evaluate(npc, player, to, player);
+            }
+        }
+        for (Npc npc : grid.getNearby(to, queryRadius)) {
+            if (restricted.contains(npc) && !npc.shownTo.contains(player.getUniqueId())) {
+                evaluate(npc, player, to, player);
+            }
+        }
+    }
+
+    void onPlayerQuit(Player player) {
+        UUID id = player.getUniqueId();
+        Set<Npc> shown = shownByPlayer.remove(id);
+        if (shown != null) {
+            for (Npc npc : shown) {
+                npc.shownTo.remove(id);
+                fillSlots(npc, player);
+            }
+        }
+        // Bukkit forgets what a player had hidden when they leave.
+        for (Npc npc : restricted) {
+            npc.hiddenFrom.remove(id);
+        }
+    }
+
+    /**
+     * Forgets an NPC that is no longer managed.
+     */
+    void remove(Npc npc) {
+        if (restricted.remove(npc)) {
+            for (UUID viewer : npc.shownTo) {
+                unlink(viewer, npc);
+            }
+            npc.shownTo.clear();
+            npc.hiddenFrom.clear();
+        }
+    }
+
+    private void evaluate(Npc npc, Player player, Location location, Player exclude) {
+        UUID id = player.getUniqueId();
+        if (!npc.isAllowedViewer(player)) {
+            hide(npc, player);
+            if (unshow(npc, id)) {
+                fillSlots(npc, exclude);
+            }
+            return;
+        }
+        if (!inRange(npc, location)) {
+            // Out of range the player is sent nothing anyway, so only their viewer slot is given up.
+            if (unshow(npc, id)) {
+                fillSlots(npc, exclude);
+            }
+            return;
+        }
+        if (npc.shownTo.contains(id)) return;
+        if (npc.getMaxViewers() > 0 && npc.shownTo.size() >= npc.getMaxViewers()) {
+            hide(npc, player);
+            return;
+        }
+        if (show(npc, player)) {
+            npc.shownTo.add(id);
+            shownByPlayer.computeIfAbsent(id, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(npc);
+        }
+    }
+
+    /**
+     * Offers a freed viewer slot to the players in range that are waiting for one.
+     */
+    private void fillSlots(Npc npc, Player exclude) {
+        if (npc.getMaxViewers() <= 0 || npc.gridWorld == null) return;
+        World world = Bukkit.getWorld(npc.gridWorld);
+        if (world == null) return;
+        for (Player player : world.getPlayers()) {
+            if (npc.shownTo.size() >= npc.getMaxViewers()) break;
+            if (player != exclude && !npc.shownTo.contains(player.getUniqueId())) {
+                Location location = player.getLocation(scratch);
+                if (inRange(npc, location)) {
+                    evaluate(npc, player, location, exclude);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows an NPC to everyone it was hidden from, once it has no rules left.
+     */
+    private void release(Npc npc) {
+        for (UUID viewer : npc.shownTo) {
+            unlink(viewer, npc);
+        }
+        npc.shownTo.clear();
+        for (UUID hidden : new ArrayList<>(npc.hiddenFrom)) {
+            Player player = Bukkit.getPlayer(hidden);
+            if (player != null) {
+                show(npc, player);
+            }
+        }
+        npc.hiddenFrom.clear();
+    }
+
+    private void hide(Npc npc, Player player) {
+        Entity entity = npc.getHandle().getEntity();
+        // A despawned NPC is hidden again when it spawns and is refreshed.
+        if (entity != null && !npc.hiddenFrom.contains(player.getUniqueId())
+                && CitizensCompat.hideEntity(NpcAPI.getPlugin(), player, entity)) {
+            npc.hiddenFrom.add(player.getUniqueId());
+        }
+    }
+
+    private boolean show(Npc npc, Player player) {
+        if (!npc.hiddenFrom.contains(player.getUniqueId())) return true;
+        Entity entity = npc.getHandle().getEntity();
+        if (entity == null) return false;
+        npc.hiddenFrom.remove(player.getUniqueId());
+        CitizensCompat.showEntity(NpcAPI.getPlugin(), player, entity);
+        return true;
+    }
+
+    private boolean unshow(Npc npc, UUID id) {
+        if (npc.shownTo.remove(id)) {
+            unlink(id, npc);
+            return true;
+        }
+        return false;
+    }
+
+    private void unlink(UUID viewer, Npc npc) {
+        Set<Npc> shown = shownByPlayer.get(viewer);
+        if (shown != null && shown.remove(npc) && shown.isEmpty()) {
+            shownByPlayer.remove(viewer);
+        }
+    }
+
+    private static boolean inRange(Npc npc, Location location) {
+        if (npc.gridWorld == null || location.getWorld() == null || !npc.gridWorld.equals(location.getWorld().getUID())) {
+            return false;
+        }
+        double dx = npc.gridX - location.getX(), dy = npc.gridY - location.getY(), dz = npc.gridZ - location.getZ();
+        double range = range(npc);
+        return dx * dx + dy * dy + dz * dz <= range * range;
+    }
+
+    private static double range(Npc npc) {
+        return npc.getViewDistance() > 0 ? npc.getViewDistance() : DEFAULT_RANGE;
+    }
+}
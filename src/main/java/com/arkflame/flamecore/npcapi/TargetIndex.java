@@ -0,0 +1,190 @@
+package com.arkflame.flamecore.npcapi;
+
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Attack target candidates shared by every NPC behavior within a tick.
+ * The living entities of a chunk are read the first time any NPC searches it in a tick, together with
+ * their positions and whether they can be attacked at all (alive, valid, not in creative or spectator mode).
+ * Later searches and target checks in the same tick reuse that, so a group of guards in one area scans each
+ * chunk once instead of once per guard. Checks that depend on the NPC, such as allies, are done per query.
+ */
+final class TargetIndex {
+    private static final int CHUNK_SHIFT = 4;
+
+    // World UID -> packed chunk coordinates -> candidates, for the current tick only.
+    private final Map<UUID, Map<Long, List<Candidate>>> chunks = new HashMap<>();
+    private final Map<Entity, Candidate> byEntity = new IdentityHashMap<>();
+    private final Location scratch = new Location(null, 0, 0, 0);
+
+    /**
+     * Forgets everything read in the previous tick. Called by NpcAPI before the behaviors run.
+     */
+    void reset() {
+        chunks.clear();
+        byEntity.clear();
+    }
+
+    /**
+     * Checks whether an NPC may attack an entity within a radius of its indexed position.
+     */
+    boolean isValidTarget(Npc npc, LivingEntity entity, double radiusSquared) {
+        if (entity == null || npc.gridWorld == null) {
+            return false;
+        }
+        Candidate candidate = get(entity);
+        return isValidTarget(npc, candidate, radiusSquared);
+    }
+
+    /**
+     * Finds the nearest entity an NPC may attack within a radius of its indexed position.
+     *
+     * @param exclude An entity to skip, or null.
+     * @return The nearest valid target, or null if there is none.
+     */
+    LivingEntity findNearest(Npc npc, World world, double radius, LivingEntity exclude) {
+        if (npc.gridWorld == null) {
+            return null;
+        }
+        double radiusSquared = radius * radius;
+        int minX = chunk(npc.gridX - radius), maxX = chunk(npc.gridX + radius);
+        int minZ = chunk(npc.gridZ - radius), maxZ = chunk(npc.gridZ + radius);
+        Candidate nearest = null;
+        double nearestSquared = Double.MAX_VALUE;
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (Candidate candidate : candidates(world, x, z)) {
+                    if (candidate.entity == exclude || !isValidTarget(npc, candidate, radiusSquared)) continue;
+                    double distanceSquared = distanceSquared(npc, candidate);
+                    if (distanceSquared < nearestSquared) {
+                        nearest = candidate;
+                        nearestSquared = distanceSquared;
+                    }
+                }
+            }
+        }
+        return nearest == null ? null : nearest.entity;
+    }
+
+    /**
+     * Passes every entity an NPC may attack within a radius of its indexed position to a consumer,
+     * together with its squared distance, in no particular order.
+     */
+    void forEachTarget(Npc npc, World world, double radius, ObjDoubleConsumer<LivingEntity> consumer) {
+        if (npc.gridWorld == null) {
+            return;
+        }
+        double radiusSquared = radius * radius;
+        int minX = chunk(npc.gridX - radius), maxX = chunk(npc.gridX + radius);
+        int minZ = chunk(npc.gridZ - radius), maxZ = chunk(npc.gridZ + radius);
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (Candidate candidate : candidates(world, x, z)) {
+                    if (isValidTarget(npc, candidate, radiusSquared)) {
+                        consumer.accept(candidate.entity, distanceSquared(npc, candidate));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The squared distance between an NPC's indexed position and an entity, or
+     *         {@link Double#MAX_VALUE} if they are in different worlds.
+     */
+    double distanceSquared(Npc npc, LivingEntity entity) {
+        Candidate candidate = get(entity);
+        return npc.gridWorld != null && npc.gridWorld.equals(candidate.worldId) ? distanceSquared(npc, candidate) : Double.MAX_VALUE;
+    }
+
+    private boolean isValidTarget(Npc npc, Candidate candidate, double radiusSquared) {
+        if (!candidate.targetable || !npc.gridWorld.equals(candidate.worldId)) {
+            return false;
+        }
+        // Target must not be the NPC itself, or one of its allies.
+        if (candidate.entity == npc.getHandle().getEntity() || npc.isAlly(candidate.entity)) {
+            return false;
+        }
+        return distanceSquared(npc, candidate) <= radiusSquared;
+    }
+
+    private Candidate get(LivingEntity entity) {
+        Candidate candidate = byEntity.get(entity);
+        if (candidate == null) {
+            candidate = new Candidate(entity, entity.getLocation(scratch));
+            byEntity.put(entity, candidate);
+        }
+        return candidate;
+    }
+
+    private List<Candidate> candidates(World world, int chunkX, int chunkZ) {
+        Map<Long, List<Candidate>> worldChunks = chunks.computeIfAbsent(world.getUID(), id -> new HashMap<>());
+        long key = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        List<Candidate> candidates = worldChunks.get(key);
+        if (candidates == null) {
+            candidates = new ArrayList<>();
+            // Never load chunks just to look for targets.
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                for (Entity entity : world.getChunkAt(chunkX, chunkZ).getEntities()) {
+                    if (entity instanceof LivingEntity) {
+                        candidates.add(get((LivingEntity) entity));
+                    }
+                }
+            }
+            worldChunks.put(key, candidates);
+        }
+        return candidates;
+    }
+
+    private static double distanceSquared(Npc npc, Candidate candidate) {
+        double dx = npc.gridX - candidate.x, dy = npc.gridY - candidate.y, dz = npc.gridZ - candidate.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int chunk(double coordinate) {
+        return (int) Math.floor(coordinate) >> CHUNK_SHIFT;
+    }
+
+    private static final class Candidate {
+        private final LivingEntity entity;
+        private final UUID worldId;
+        private final double x, y, z;
+        // Whether anything may attack this entity, regardless of the NPC.
+        private final boolean targetable;
+
+        Candidate(LivingEntity entity, Location location) {
+            this.entity = entity;
+            this.worldId = location.getWorld().getUID();
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+            this.targetable = isTargetable(entity);
+        }
+
+        private static boolean isTargetable(LivingEntity entity) {
+            // Target must be alive and valid in the world.
+            if (entity.isDead() || !entity.isValid()) {
+                return false;
+            }
+            // If the target is a player, check their gamemode.
+            if (entity instanceof Player) {
+                GameMode gameMode = ((Player) entity).getGameMode();
+                return gameMode != GameMode.CREATIVE && gameMode != GameMode.SPECTATOR;
+            }
+            return true;
+        }
+    }
+}
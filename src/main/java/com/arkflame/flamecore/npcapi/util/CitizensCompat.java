@@ -2,60 +2,86 @@ package com.arkflame.flamecore.npcapi.util;
 
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.MemoryNPCDataStore;
+import net.citizensnpcs.api.npc.MetadataStore;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCRegistry;
 import net.citizensnpcs.api.trait.Trait;
 import org.bukkit.Location;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerTeleportEvent.TeleportCause; // Correct import
+import org.bukkit.inventory.EntityEquipment;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
  * A definitive compatibility wrapper for Citizens API versions (2.0.28 to
  * 2.0.39+).
- * This class uses reflection to safely bridge API differences and provides safe
- * methods.
+ * Version differences are resolved once, when the class loads, into MethodHandles
+ * already bound to this server's variant, so calls from the combat loop do no reflection lookups.
  */
 public final class CitizensCompat {
+    private static final MethodType TRAIT_ACTION = MethodType.methodType(void.class, Object.class);
+    private static final MethodType TRAIT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
     // --- Feature Flags ---
     public static final boolean SUPPORTS_ANIMATION_TRAIT;
+    public static final boolean SUPPORTS_OFF_HAND;
+    public static final boolean SUPPORTS_PACKET_NPC;
 
     // --- Cached Classes ---
     private static Class<? extends Trait> skinTraitClass;
     private static Class<? extends Trait> animationTraitClass;
-    private static Class<?> equipmentClass;
-    private static Class<?> equipmentSlotClass; // Modern org.bukkit.inventory.EquipmentSlot enum
-
-    // --- Cached Methods ---
-    private static Method setSkinNameMethod;
-    private static Method playAnimationMethod;
-    private static Method setEquipmentMethod; // For modern enum-based setting
-    private static Method setEquipmentLegacyMethod; // For legacy int-based setting
-    private static Method swingArmNmsMethod;
-    private static Method getHandleMethod;
-    private static Method sendPacketMethod;
-    private static Field playerConnectionField;
-    private static Constructor<?> animationPacketConstructor;
+    private static Class<? extends Trait> equipmentClass;
+    private static Class<? extends Trait> packetNpcClass;
+
+    // --- Cached Handles ---
+    // (SkinTrait, String skinName) -> void, with the update flag bound to true.
+    private static MethodHandle setSkinName;
+    // (AnimationTrait) -> void, playing SWING_ARM.
+    private static MethodHandle playSwing;
+    // (Equipment, ItemStack) -> void, with the main hand slot bound for this version.
+    private static MethodHandle setHandEquipment;
+    // (EntityEquipment, ItemStack) -> void, 1.9+ only.
+    private static MethodHandle setItemInOffHand;
+    // (MetadataStore, Object range) -> void, with the TRACKING_RANGE key bound.
+    private static MethodHandle setTrackingRange;
+    // (Player viewer, Plugin, Entity) -> void, for Player.hideEntity/showEntity on 1.18+
+    // or Player.hidePlayer/showPlayer(Plugin, Player) on 1.12+.
+    private static MethodHandle hideEntity;
+    private static MethodHandle showEntity;
+    private static boolean hidesAnyEntity;
+    // NMS fallback for the arm swing on 1.8.
+    private static MethodHandle getHandle;
+    private static MethodHandle getPlayerConnection;
+    private static MethodHandle sendPacket;
+    private static MethodHandle newSwingPacket;
 
     private static NPCRegistry temporaryRegistry;
 
     static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
         // --- Detect SkinTrait Location ---
-        try {
-            skinTraitClass = (Class<? extends Trait>) Class.forName("net.citizensnpcs.trait.SkinTrait");
-            setSkinNameMethod = skinTraitClass.getMethod("setSkinName", String.class, boolean.class);
-        } catch (Exception e) {
+        for (String className : new String[] { "net.citizensnpcs.trait.SkinTrait", "net.citizensnpcs.api.trait.trait.SkinTrait" }) {
             try {
-                skinTraitClass = (Class<? extends Trait>) Class.forName("net.citizensnpcs.api.trait.trait.SkinTrait");
-                setSkinNameMethod = skinTraitClass.getMethod("setSkinName", String.class, boolean.class);
-            } catch (Exception ex) {
-                System.err.println(
-                        "Could not find any SkinTrait class for Citizens. Skin functionality will be disabled.");
-            }
+                Class<? extends Trait> traitClass = (Class<? extends Trait>) Class.forName(className);
+                setSkinName = MethodHandles.insertArguments(
+                        lookup.findVirtual(traitClass, "setSkinName", MethodType.methodType(void.class, String.class, boolean.class)), 2, true)
+                        .asType(TRAIT_SETTER);
+                skinTraitClass = traitClass;
+                break;
+            } catch (Exception ignored) {
+                /* Try the next location. */ }
+        }
+        if (skinTraitClass == null) {
+            System.err.println(
+                    "Could not find any SkinTrait class for Citizens. Skin functionality will be disabled.");
         }
 
         // --- Detect AnimationTrait ---
@@ -63,30 +89,93 @@ public final class CitizensCompat {
         try {
             animationTraitClass = (Class<? extends Trait>) Class.forName("net.citizensnpcs.trait.AnimationTrait");
             Class<?> animationEnum = Class.forName("net.citizensnpcs.trait.AnimationTrait$Animation");
-            playAnimationMethod = animationTraitClass.getMethod("play", animationEnum);
+            Object swingArm = animationEnum.getEnumConstants()[0]; // SWING_ARM
+            playSwing = MethodHandles.insertArguments(
+                    lookup.findVirtual(animationTraitClass, "play", MethodType.methodType(void.class, animationEnum)), 1, swingArm)
+                    .asType(TRAIT_ACTION);
             animationSupport = true;
         } catch (Exception e) {
             /* AnimationTrait does not exist on this version. */ }
         SUPPORTS_ANIMATION_TRAIT = animationSupport;
 
-        // --- THE DEFINITIVE FIX for Equipment ---
+        // --- Equipment: bind the main hand slot of this version once ---
         try {
             equipmentClass = (Class<? extends Trait>) Class.forName("net.citizensnpcs.api.trait.trait.Equipment");
-
-            // Try to load the modern (enum-based) method first.
             try {
-                equipmentSlotClass = Class.forName("org.bukkit.inventory.EquipmentSlot");
-                setEquipmentMethod = equipmentClass.getMethod("set", equipmentSlotClass, ItemStack.class);
+                // Modern enum-based slot system (1.13+)
+                Class<?> slotClass = Class.forName("org.bukkit.inventory.EquipmentSlot");
+                Object hand = null;
+                for (Object enumConstant : slotClass.getEnumConstants()) {
+                    if (enumConstant.toString().equals("HAND")) {
+                        hand = enumConstant;
+                        break;
+                    }
+                }
+                setHandEquipment = MethodHandles.insertArguments(
+                        lookup.findVirtual(equipmentClass, "set", MethodType.methodType(void.class, slotClass, ItemStack.class)), 1, hand);
             } catch (ClassNotFoundException | NoSuchMethodException ignored) {
-                // If the modern enum or method isn't found, we're on a legacy version.
-                // Fall back to the legacy (int-based) method.
-                setEquipmentLegacyMethod = equipmentClass.getMethod("set", int.class, ItemStack.class);
+                // Legacy integer-based slot system (1.8–1.12), where 0 is the hand.
+                setHandEquipment = MethodHandles.insertArguments(
+                        lookup.findVirtual(equipmentClass, "set", MethodType.methodType(void.class, int.class, ItemStack.class)), 1, 0);
             }
+            setHandEquipment = setHandEquipment.asType(TRAIT_SETTER);
         } catch (Exception e) {
+            equipmentClass = null;
             System.err.println("Could not initialize Equipment trait methods for Citizens.");
             e.printStackTrace();
         }
 
+        // --- Detect the off-hand (1.9+) ---
+        try {
+            setItemInOffHand = lookup.findVirtual(EntityEquipment.class, "setItemInOffHand", MethodType.methodType(void.class, ItemStack.class))
+                    .asType(MethodType.methodType(void.class, EntityEquipment.class, ItemStack.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            /* The off-hand does not exist before 1.9. */ }
+        SUPPORTS_OFF_HAND = setItemInOffHand != null;
+
+        // --- Detect packet-only NPCs, which have no server-side entity ---
+        try {
+            packetNpcClass = (Class<? extends Trait>) Class.forName("net.citizensnpcs.trait.PacketNPC");
+        } catch (Exception e) {
+            /* PacketNPC does not exist on this version. */ }
+        SUPPORTS_PACKET_NPC = packetNpcClass != null;
+
+        // --- Detect the per-NPC tracking range ---
+        try {
+            Class<?> metadataClass = Class.forName("net.citizensnpcs.api.npc.NPC$Metadata");
+            Object trackingRange = null;
+            for (Object enumConstant : metadataClass.getEnumConstants()) {
+                if (enumConstant.toString().equals("TRACKING_RANGE")) {
+                    trackingRange = enumConstant;
+                    break;
+                }
+            }
+            if (trackingRange != null) {
+                setTrackingRange = MethodHandles.insertArguments(
+                        lookup.findVirtual(MetadataStore.class, "set", MethodType.methodType(void.class, metadataClass, Object.class)), 1, trackingRange)
+                        .asType(MethodType.methodType(void.class, MetadataStore.class, Object.class));
+            }
+        } catch (Exception e) {
+            /* Citizens uses the server's entity tracking range on this version. */ }
+
+        // --- Detect per-player entity visibility ---
+        MethodType visibilityType = MethodType.methodType(void.class, Player.class, Plugin.class, Entity.class);
+        try {
+            hideEntity = lookup.findVirtual(Player.class, "hideEntity", MethodType.methodType(void.class, Plugin.class, Entity.class))
+                    .asType(visibilityType);
+            showEntity = lookup.findVirtual(Player.class, "showEntity", MethodType.methodType(void.class, Plugin.class, Entity.class))
+                    .asType(visibilityType);
+            hidesAnyEntity = true;
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            try {
+                hideEntity = lookup.findVirtual(Player.class, "hidePlayer", MethodType.methodType(void.class, Plugin.class, Player.class))
+                        .asType(visibilityType);
+                showEntity = lookup.findVirtual(Player.class, "showPlayer", MethodType.methodType(void.class, Plugin.class, Player.class))
+                        .asType(visibilityType);
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                /* Before 1.12 only the plugin-less hidePlayer(Player) exists. */ }
+        }
+
         // --- Initialize NMS Fallback for Arm Swing (for 1.8) ---
         if (!SUPPORTS_ANIMATION_TRAIT) {
             try {
@@ -95,17 +184,24 @@ public final class CitizensCompat {
                 String craftbukkitPackage = "org.bukkit.craftbukkit." + nmsVersion;
                 String nmsPackage = "net.minecraft.server." + nmsVersion;
 
-                Class<?> craftPlayerClass = Class.forName(craftbukkitPackage + ".entity.CraftPlayer");
-                getHandleMethod = craftPlayerClass.getMethod("getHandle");
+                Class<?> craftEntityClass = Class.forName(craftbukkitPackage + ".entity.CraftEntity");
+                Class<?> nmsEntityClass = Class.forName(nmsPackage + ".Entity");
+                getHandle = lookup.findVirtual(craftEntityClass, "getHandle", MethodType.methodType(nmsEntityClass))
+                        .asType(MethodType.methodType(Object.class, Object.class));
                 Class<?> entityPlayerClass = Class.forName(nmsPackage + ".EntityPlayer");
-                playerConnectionField = entityPlayerClass.getField("playerConnection");
-                Class<?> packetClass = Class.forName(nmsPackage + ".Packet");
                 Class<?> playerConnectionClass = Class.forName(nmsPackage + ".PlayerConnection");
-                sendPacketMethod = playerConnectionClass.getMethod("sendPacket", packetClass);
+                getPlayerConnection = lookup.findGetter(entityPlayerClass, "playerConnection", playerConnectionClass)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                Class<?> packetClass = Class.forName(nmsPackage + ".Packet");
+                sendPacket = lookup.findVirtual(playerConnectionClass, "sendPacket", MethodType.methodType(void.class, packetClass))
+                        .asType(TRAIT_SETTER);
                 Class<?> packetAnimationClass = Class.forName(nmsPackage + ".PacketPlayOutAnimation");
-                Class<?> entityClass = Class.forName(nmsPackage + ".Entity");
-                animationPacketConstructor = packetAnimationClass.getConstructor(entityClass, int.class);
+                // 0 is the swing animation.
+                newSwingPacket = MethodHandles.insertArguments(
+                        lookup.findConstructor(packetAnimationClass, MethodType.methodType(void.class, nmsEntityClass, int.class)), 1, 0)
+                        .asType(MethodType.methodType(Object.class, Object.class));
             } catch (Exception e) {
+                newSwingPacket = null;
                 System.err.println(
                         "Could not initialize NMS for legacy arm swing. Swing animations may not work on this version.");
             }
@@ -124,13 +220,13 @@ public final class CitizensCompat {
     }
 
     public static void setSkin(NPC npc, String skinName) {
-        if (skinTraitClass == null || setSkinNameMethod == null)
+        if (setSkinName == null)
             return;
         try {
             Trait skinTrait = npc.getOrAddTrait(skinTraitClass);
-            setSkinNameMethod.invoke(skinTrait, skinName, true);
-        } catch (Exception e) {
-            e.printStackTrace();
+            setSkinName.invokeExact((Object) skinTrait, (Object) skinName);
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
     }
 
@@ -143,29 +239,96 @@ public final class CitizensCompat {
      * @param item The item to place in the NPC's hand.
      */
     public static void setEquipment(NPC npc, ItemStack item) {
-        if (equipmentClass == null)
+        if (setHandEquipment == null)
             return;
         try {
-            Trait equipmentTrait = npc.getOrAddTrait((Class<? extends Trait>) equipmentClass);
+            Trait equipmentTrait = npc.getOrAddTrait(equipmentClass);
+            setHandEquipment.invokeExact((Object) equipmentTrait, (Object) item);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the off-hand item of an entity.
+     *
+     * @return false if this server version has no off-hand (before 1.9).
+     */
+    public static boolean setItemInOffHand(EntityEquipment equipment, ItemStack item) {
+        if (setItemInOffHand == null)
+            return false;
+        try {
+            setItemInOffHand.invokeExact(equipment, item);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to set the off-hand item.", t);
+        }
+        return true;
+    }
 
-            if (setEquipmentMethod != null && equipmentSlotClass != null) {
-                // Modern enum-based slot system (1.13+)
-                Object handEnum = equipmentSlotClass.getEnumConstants()[4]; // EquipmentSlot.HAND (usually 4th or 5th)
-                // A safer way to find it:
-                for (Object enumConstant : equipmentSlotClass.getEnumConstants()) {
-                    if (enumConstant.toString().equals("HAND")) {
-                        handEnum = enumConstant;
-                        break;
-                    }
-                }
-                setEquipmentMethod.invoke(equipmentTrait, handEnum, item);
-            } else if (setEquipmentLegacyMethod != null) {
-                // Legacy integer-based slot system (1.8–1.12)
-                setEquipmentLegacyMethod.invoke(equipmentTrait, 0, item); // 0 = hand
+    /**
+     * Makes an NPC packet-only: players are sent a fake entity, but nothing exists or ticks on the server.
+     * Must be called before the NPC spawns.
+     *
+     * @return false if this Citizens version has no packet NPCs, in which case the NPC stays a normal entity.
+     */
+    public static boolean makePacketOnly(NPC npc) {
+        if (packetNpcClass == null)
+            return false;
+        npc.getOrAddTrait(packetNpcClass);
+        return true;
+    }
+
+    /**
+     * Sets how far away, in blocks, players are sent an NPC.
+     *
+     * @return false if this Citizens version does not support a per-NPC range.
+     */
+    public static boolean setTrackingRange(NPC npc, int blocks) {
+        if (setTrackingRange == null)
+            return false;
+        try {
+            setTrackingRange.invokeExact(npc.data(), (Object) blocks);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to set the NPC tracking range.", t);
+        }
+        return true;
+    }
+
+    /**
+     * Hides an entity from a player, so the server stops sending it to them.
+     * Servers before 1.18 can only hide players, which includes player-type NPCs.
+     *
+     * @return false if the entity cannot be hidden on this server version.
+     */
+    public static boolean hideEntity(Plugin plugin, Player viewer, Entity entity) {
+        return setVisible(hideEntity, plugin, viewer, entity, false);
+    }
+
+    /**
+     * Shows an entity hidden with {@link #hideEntity} again.
+     */
+    public static boolean showEntity(Plugin plugin, Player viewer, Entity entity) {
+        return setVisible(showEntity, plugin, viewer, entity, true);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean setVisible(MethodHandle handle, Plugin plugin, Player viewer, Entity entity, boolean visible) {
+        if (!hidesAnyEntity && !(entity instanceof Player))
+            return false;
+        if (handle == null) {
+            if (visible) {
+                viewer.showPlayer((Player) entity);
+            } else {
+                viewer.hidePlayer((Player) entity);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return true;
         }
+        try {
+            handle.invokeExact(viewer, plugin, entity);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to change the visibility of an entity.", t);
+        }
+        return true;
     }
 
     public static void playSwingAnimation(NPC npc) {
@@ -174,27 +337,24 @@ public final class CitizensCompat {
         if (SUPPORTS_ANIMATION_TRAIT) {
             try {
                 Trait animationTrait = npc.getOrAddTrait(animationTraitClass);
-                Object swingEnum = animationTraitClass.getDeclaredClasses()[0].getEnumConstants()[0]; // SWING_ARM
-                playAnimationMethod.invoke(animationTrait, swingEnum);
-            } catch (Exception e) {
-                e.printStackTrace();
+                playSwing.invokeExact((Object) animationTrait);
+            } catch (Throwable t) {
+                t.printStackTrace();
             }
         } else {
             // Legacy NMS Fallback
-            if (animationPacketConstructor == null)
+            if (newSwingPacket == null)
                 return;
             try {
-                Object handle = getHandleMethod.invoke(npc.getEntity());
-                Object packet = animationPacketConstructor.newInstance(handle, 0); // 0 is the swing animation
-
-                for (Player player : npc.getStoredLocation().getWorld().getPlayers()) {
-                    if (player.getLocation().distanceSquared(npc.getStoredLocation()) < 2500) { // 50*50 blocks
-                        Object playerHandle = getHandleMethod.invoke(player);
-                        Object playerConnection = playerConnectionField.get(playerHandle);
-                        sendPacketMethod.invoke(playerConnection, packet);
+                Object packet = newSwingPacket.invokeExact((Object) getHandle.invokeExact((Object) npc.getEntity()));
+                Location npcLocation = npc.getStoredLocation();
+                for (Player player : npcLocation.getWorld().getPlayers()) {
+                    if (player.getLocation().distanceSquared(npcLocation) < 2500) { // 50*50 blocks
+                        Object playerConnection = getPlayerConnection.invokeExact(getHandle.invokeExact((Object) player));
+                        sendPacket.invokeExact(playerConnection, packet);
                     }
                 }
-            } catch (Exception e) {
+            } catch (Throwable t) {
                 // silent fail
             }
         }
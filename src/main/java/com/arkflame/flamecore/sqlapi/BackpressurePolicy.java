@@ -0,0 +1,23 @@
+package com.arkflame.flamecore.sqlapi;
+
+/**
+ * Decides what happens to a database operation when the executor's queue is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The submitting thread waits until there is room in the queue.
+     * Only use this if operations are never submitted from the main server thread, since a slow
+     * database would freeze the server.
+     */
+    BLOCK,
+    /**
+     * The operation is rejected and its future completes exceptionally with a
+     * {@link java.util.concurrent.RejectedExecutionException}. This is the default.
+     */
+    FAIL_FAST,
+    /**
+     * The operation runs synchronously on the submitting thread.
+     * Avoid this if operations are submitted from the main server thread.
+     */
+    CALLER_RUNS
+}
@@ -0,0 +1,33 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Stores a UUID as its 16 bytes, most significant first, so byte order matches UUID.toString order.
+ * This class is not intended for direct use. Use {@link ColumnCodec#binaryUuid()}.
+ */
+final class BinaryUuidCodec implements ColumnCodec<UUID> {
+    static final BinaryUuidCodec INSTANCE = new BinaryUuidCodec();
+
+    private BinaryUuidCodec() {}
+
+    @Override
+    public byte[] encode(UUID value) {
+        return ByteBuffer.allocate(16)
+                .putLong(value.getMostSignificantBits())
+                .putLong(value.getLeastSignificantBits())
+                .array();
+    }
+
+    @Override
+    public UUID decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    @Override
+    public int getFixedLength() {
+        return 16;
+    }
+}
@@ -0,0 +1,51 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.UUID;
+
+/**
+ * Stores a field type as bytes in a binary column. Register a codec with the database API's
+ * {@code registerCodec} method before calling {@code migrate}. It is then used for every field,
+ * map key and map value of that type.
+ *
+ * Example:
+ * <pre>{@code
+ * dbAPI.registerCodec(UUID.class, ColumnCodec.binaryUuid());
+ * }</pre>
+ * @param <T> The Java type stored by this codec.
+ */
+public interface ColumnCodec<T> {
+    /**
+     * Encodes a non-null value.
+     */
+    byte[] encode(T value);
+
+    /**
+     * Decodes a value written by {@link #encode(Object)}.
+     */
+    T decode(byte[] data);
+
+    /**
+     * @return The length of every encoded value, or 0 if the length varies. Fixed-length values are
+     *         stored in a fixed-size column, which MySQL can index.
+     */
+    default int getFixedLength() {
+        return 0;
+    }
+
+    /**
+     * @return A codec that stores UUIDs as 16 raw bytes instead of 36 characters of text, which makes
+     *         UUID keys and indexes less than half the size.
+     */
+    static ColumnCodec<UUID> binaryUuid() {
+        return BinaryUuidCodec.INSTANCE;
+    }
+
+    /**
+     * @return The compact format the engine uses for nested objects, collections and arrays, for
+     *         storing values of the given type in other binary fields.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> ColumnCodec<T> compact(Class<T> type) {
+        return (ColumnCodec<T>) (ColumnCodec<?>) new ObjectCodec(type);
+    }
+}
@@ -0,0 +1,168 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A dedicated, bounded thread pool for database operations.
+ * It keeps database work off Bukkit's shared async pool, caps the number of queued operations,
+ * and applies a {@link BackpressurePolicy} once the queue is full.
+ * This class is not intended for direct use. It is managed by the database APIs.
+ */
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalExecutionNanos = new AtomicLong();
+    private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+    public DatabaseExecutor(String threadName, int threads, int queueCapacity, BackpressurePolicy policy) {
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, rejectionHandler(policy));
+    }
+
+    /**
+     * Runs a task on the executor. If the task is rejected, the future completes exceptionally.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        Task<T> queued = new Task<>(task);
+        try {
+            executor.execute(queued);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            queued.future.completeExceptionally(e);
+        }
+        return queued.future;
+    }
+
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public ExecutorStats stats() {
+        long count = completed.sum();
+        return new ExecutorStats(executor.getQueue().size(), queueCapacity, executor.getActiveCount(), executor.getPoolSize(),
+                count, rejected.sum(),
+                count == 0 ? 0.0 : nanosToMillis(totalQueueNanos.get()) / count, nanosToMillis(maxQueueNanos.get()),
+                count == 0 ? 0.0 : nanosToMillis(totalExecutionNanos.get()) / count, nanosToMillis(maxExecutionNanos.get()));
+    }
+
+    /**
+     * Stops accepting new tasks and waits for queued ones to finish.
+     * Tasks still queued after the timeout are dropped, and their futures complete exceptionally.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                failDropped(executor.shutdownNow());
+            }
+        } catch (InterruptedException e) {
+            failDropped(executor.shutdownNow());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void failDropped(List<Runnable> dropped) {
+        for (Runnable runnable : dropped) {
+            rejected.increment();
+            ((Task<?>) runnable).future.completeExceptionally(
+                    new RejectedExecutionException("Database executor was shut down before the task ran."));
+        }
+    }
+
+    private void record(long queueNanos, long executionNanos) {
+        completed.increment();
+        totalQueueNanos.addAndGet(queueNanos);
+        totalExecutionNanos.addAndGet(executionNanos);
+        maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+        maxExecutionNanos.accumulateAndGet(executionNanos, Math::max);
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(BackpressurePolicy policy) {
+        switch (policy) {
+            case BLOCK:
+                return (runnable, executor) -> {
+                    try {
+                        // Waits in steps, so a shutdown while waiting rejects the task instead of blocking forever.
+                        do {
+                            if (executor.isShutdown()) {
+                                throw new RejectedExecutionException("Database executor has been shut down.");
+                            }
+                        } while (!executor.getQueue().offer(runnable, 100, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for the database queue.", e);
+                    }
+                    // A shutdown between the check and the offer may leave no thread to run the task.
+                    if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                        throw new RejectedExecutionException("Database executor has been shut down.");
+                    }
+                };
+            case CALLER_RUNS:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Database executor has been shut down.");
+                    }
+                    runnable.run();
+                };
+            case FAIL_FAST:
+            default:
+                return (runnable, executor) -> {
+                    throw new RejectedExecutionException("Database queue is full.");
+                };
+        }
+    }
+
+    /**
+     * A queued task with its future, so tasks dropped on shutdown can still complete their futures.
+     */
+    private final class Task<T> implements Runnable {
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+
+        Task(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                record(startedAt - queuedAt, System.nanoTime() - startedAt);
+            }
+        }
+    }
+}
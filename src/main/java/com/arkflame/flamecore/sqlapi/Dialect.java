@@ -0,0 +1,47 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.List;
+
+/**
+ * Everything the shared {@link EntityMapper} needs to know about a specific database.
+ * Implement this to add a new SQL backend. Identifiers passed to a dialect are already validated
+ * to contain only letters, digits and underscores.
+ */
+public interface Dialect {
+    /**
+     * Quotes a table, column or index name.
+     */
+    String quote(String identifier);
+
+    /**
+     * @return The column type used to store a Java field type.
+     */
+    String getColumnType(Class<?> type);
+
+    /**
+     * @param fixedLength The length of every stored value, or 0 if the length varies.
+     * @return The column type used to store values encoded by a {@link ColumnCodec}.
+     */
+    String getBinaryColumnType(int fixedLength);
+
+    /**
+     * @return true if a column of this type, as returned by this dialect, can be part of a primary key or index.
+     */
+    boolean isIndexable(String columnType);
+
+    /**
+     * Builds an INSERT of the columns followed by the primary key, with one placeholder each,
+     * that updates the columns instead when a row with the same primary key already exists.
+     */
+    String upsert(String table, String primaryKey, List<String> columns);
+
+    /**
+     * @return The LIMIT value that means "no limit", for queries with an OFFSET but no LIMIT.
+     */
+    String getUnlimited();
+
+    /**
+     * @return The maximum number of values bound in one IN (...) list.
+     */
+    int getMaxInParameters();
+}
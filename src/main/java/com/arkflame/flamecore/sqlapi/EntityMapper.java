@@ -0,0 +1,862 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+/**
+ * The internal ORM engine shared by MySQLAPI and SQLiteAPI. Handles mapping Java objects to tables,
+ * and leaves everything that differs between databases to a {@link Dialect}.
+ * This class is not intended for direct use. It is managed by the database APIs.
+ */
+public class EntityMapper {
+    private final Dialect dialect;
+    private final DataSource writeDataSource;
+    private final DataSource readDataSource;
+    private final DataSource streamDataSource;
+    // Owners per IN (...) query when loading map fields, and rows per streamed chunk.
+    private final int maxInParameters;
+    private final Map<Class<?>, MappedEntity> entityCache = new ConcurrentHashMap<>();
+    // Entities whose tables were created or updated by migrate; only these can be saved.
+    private final Set<MappedEntity> migratedEntities = ConcurrentHashMap.newKeySet();
+    private final SchemaMigrator schemaMigrator;
+    // Compiled query builder SQL, keyed by query shape.
+    private final Map<String, String> compiledQueries = new ConcurrentHashMap<>();
+    // Registered codecs, plus the ObjectCodecs created for nested object types.
+    private final Map<Class<?>, ColumnCodec<?>> codecs = new ConcurrentHashMap<>();
+    private volatile StatementListener statementListener;
+
+    /**
+     * @param dialect The SQL dialect of the database.
+     * @param writeDataSource The connections used for saves and schema changes.
+     * @param readDataSource The connections used for loads. May be the same as writeDataSource.
+     */
+    public EntityMapper(Dialect dialect, DataSource writeDataSource, DataSource readDataSource) {
+        this(dialect, writeDataSource, readDataSource, readDataSource);
+    }
+
+    /**
+     * @param streamDataSource The connections used for streamed loads with a fetch size, e.g. with
+     *        driver settings that only streaming needs. May be the same as readDataSource.
+     */
+    public EntityMapper(Dialect dialect, DataSource writeDataSource, DataSource readDataSource, DataSource streamDataSource) {
+        this.dialect = dialect;
+        this.writeDataSource = writeDataSource;
+        this.readDataSource = readDataSource;
+        this.streamDataSource = streamDataSource;
+        this.maxInParameters = dialect.getMaxInParameters();
+        this.schemaMigrator = new SchemaMigrator(dialect);
+    }
+
+    /**
+     * Stores a field type with a codec, in a binary column. Codecs apply to entity fields, map keys and
+     * map values of exactly this type.
+     * @throws IllegalStateException if an entity class was already migrated, since its columns were
+     *         created for the previous encoding.
+     */
+    public <T> void registerCodec(Class<T> type, ColumnCodec<T> codec) {
+        if (!migratedEntities.isEmpty()) {
+            throw new IllegalStateException("Codecs must be registered before migrate() is called.");
+        }
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Sets the listener that is told the timing of every save, load, query and schema change, or null to remove it.
+     */
+    public void setStatementListener(StatementListener statementListener) {
+        this.statementListener = statementListener;
+    }
+
+    /**
+     * Encodes an entity or any other value in the compact format used for nested object columns,
+     * e.g. to cache entities outside the database. Decode it with {@link #deserialize(Class, byte[])}.
+     * @throws IllegalStateException if the value's class has a field type the format cannot store.
+     */
+    public byte[] serialize(Object value) {
+        return new ObjectCodec(value.getClass()).encode(value);
+    }
+
+    /**
+     * Checks that instances of a class can be passed to {@link #serialize(Object)}.
+     * @throws IllegalStateException naming the field type that cannot be stored.
+     */
+    public void checkSerializable(Class<?> type) {
+        new ObjectCodec(type);
+    }
+
+    /**
+     * Decodes a value written by {@link #serialize(Object)}. Map fields are restored as plain maps,
+     * so the next save of a deserialized entity rewrites them in full.
+     * @throws IllegalStateException if the data does not match the type.
+     */
+    public <T> T deserialize(Class<T> type, byte[] data) {
+        return type.cast(new ObjectCodec(type).decode(data));
+    }
+
+    /**
+     * Applies pending versioned migrations, then creates or updates the tables, columns and indexes of
+     * the given entity classes. This is the only place the engine changes the schema; saves never do.
+     * @param owner The name the applied migration versions are recorded under, usually the plugin name.
+     * @param migrations The migrations, sorted by version.
+     * @return The migrations that were applied by this call.
+     * @throws Exception if a migration or schema change failed. Later migrations are not applied.
+     */
+    public List<Migration> migrate(String owner, List<Migration> migrations, Collection<Class<?>> entityClasses) throws Exception {
+        try (Connection conn = writeDataSource.getConnection()) {
+            List<Migration> applied = schemaMigrator.apply(conn, owner, migrations);
+            for (Class<?> entityClass : entityClasses) {
+                MappedEntity mappedEntity = getMappedEntity(entityClass);
+                long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    ensureSchemaIsUpToDate(conn, mappedEntity);
+                    failed = false;
+                } finally {
+                    record(StatementType.SCHEMA, entityClass, null, 0, start, failed);
+                }
+                migratedEntities.add(mappedEntity);
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Saves a single entity in its own transaction.
+     * @throws IllegalStateException if the entity's class has not been passed to migrate.
+     * @throws Exception if the entity could not be written.
+     */
+    public void save(Object entity) throws Exception {
+        saveAll(Collections.singletonList(entity));
+    }
+
+    /**
+     * Replaces the @StoreAsTable maps of an entity with change-tracking maps, so later saves only write
+     * the keys that changed. Call it on the thread that owns the entity, before the save is queued:
+     * the field is never replaced from the database thread. Callers must re-read the field afterwards
+     * instead of keeping the old map, whose changes would no longer be saved.
+     */
+    public void trackMaps(Object entity) {
+        for (MappedField mapField : getMappedEntity(entity.getClass()).getMapFields()) {
+            if (!mapField.isTrackable()) continue;
+            Object map = mapField.get(entity);
+            if (map != null && !(map instanceof TrackedMap)) {
+                mapField.set(entity, new TrackedMap<>((Map<?, ?>) map));
+            }
+        }
+    }
+
+    /**
+     * Saves a batch of entities, which may be of different classes, in a single transaction.
+     * The rows of each class are upserted with one batched statement instead of one round trip per entity.
+     * @throws IllegalStateException if an entity's class has not been passed to migrate.
+     * @throws Exception if the batch could not be written. The transaction is rolled back.
+     */
+    public void saveAll(Collection<?> entities) throws Exception {
+        if (entities.isEmpty()) return;
+        Map<MappedEntity, List<Object>> entitiesByClass = new LinkedHashMap<>();
+        for (Object entity : entities) {
+            entitiesByClass.computeIfAbsent(getMappedEntity(entity.getClass()), k -> new ArrayList<>()).add(entity);
+        }
+        for (MappedEntity mappedEntity : entitiesByClass.keySet()) {
+            if (!migratedEntities.contains(mappedEntity)) {
+                // Schema changes can lock large tables, so they only happen at startup in migrate.
+                throw new IllegalStateException("The table for " + mappedEntity.getEntityName() + " has not been migrated. Pass the class to migrate() at startup.");
+            }
+        }
+        long start = System.nanoTime();
+        try (Connection conn = writeDataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            List<Runnable> onRollback = new ArrayList<>();
+            MappedEntity current = null;
+            try {
+                for (Map.Entry<MappedEntity, List<Object>> group : entitiesByClass.entrySet()) {
+                    current = group.getKey();
+                    upsertEntities(conn, current, group.getValue());
+                    for (Object entity : group.getValue()) {
+                        saveMapFields(conn, current, entity, onRollback);
+                    }
+                    // The first group's time includes acquiring the connection.
+                    record(StatementType.SAVE, current.getEntityClass(), null, group.getValue().size(), start, false);
+                    start = System.nanoTime();
+                    current = null;
+                }
+                conn.commit();
+            } catch (Exception e) {
+                if (current != null) {
+                    record(StatementType.SAVE, current.getEntityClass(), null, entitiesByClass.get(current).size(), start, true);
+                }
+                conn.rollback();
+                onRollback.forEach(Runnable::run);
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    public Object getPrimaryKeyValue(Object entity) {
+        return getMappedEntity(entity.getClass()).getPrimaryKey().get(entity);
+    }
+
+    public Class<?> getPrimaryKeyType(Class<?> clazz) {
+        return getMappedEntity(clazz).getPrimaryKey().getType();
+    }
+
+    /**
+     * @throws Exception if the query failed. A missing row returns null instead.
+     */
+    public <T> T loadById(Class<T> clazz, Object primaryKeyValue) throws Exception {
+        List<T> results = loadInternal(clazz, null, primaryKeyValue);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * @throws Exception if the query failed.
+     */
+    public <T> List<T> loadAllBy(Class<T> clazz, String key, Object value) throws Exception {
+        return loadInternal(clazz, key, value);
+    }
+
+    private <T> List<T> loadInternal(Class<T> clazz, String key, Object value) throws Exception {
+        List<T> results = new ArrayList<>();
+        // If key is null, use the primary key's name, which is pre-validated.
+        String sqlKey = (key == null) ? getMappedEntity(clazz).getPrimaryKey().getName() : key;
+        stream(clazz, sqlKey, value, 0, results::add);
+        return results;
+    }
+
+    /**
+     * Passes every row matching key = value (or every row, if key is null) to the consumer as it is read,
+     * without collecting the whole result in memory.
+     * The fetch size is passed to the driver, which decides how many rows it reads per round trip.
+     * @throws Exception if the query or the consumer fails. The connection is released either way.
+     */
+    public <T> void stream(Class<T> clazz, String key, Object value, int fetchSize, Consumer<? super T> consumer) throws Exception {
+        MappedEntity mappedEntity = getMappedEntity(clazz);
+        // This query is safe as the table name is pre-validated and the column name (key) is validated here.
+        String sql = "SELECT * FROM " + q(mappedEntity.getTableName());
+        List<Object> params = new ArrayList<>(1);
+        if (key != null) {
+            // The key may be external input and MUST be validated to prevent SQL injection.
+            validateIdentifier(key);
+            sql += " WHERE " + q(key) + " = ?";
+            MappedField field = mappedEntity.findField(key);
+            params.add(field == null ? value : toColumn(field.getType(), value));
+        }
+        streamInternal(StatementType.LOAD, clazz, mappedEntity, sql, params, fetchSize, consumer);
+    }
+
+    /**
+     * Starts a query builder for an entity class. Its results are loaded through the given runner.
+     */
+    public <T> Query<T> query(Class<T> clazz, TaskRunner runner) {
+        return new Query<>(this, runner, clazz);
+    }
+
+    /**
+     * Passes every row matched by a query builder to the consumer as it is read.
+     */
+    <T> void query(Query<T> query, int fetchSize, Consumer<? super T> consumer) throws Exception {
+        MappedEntity mappedEntity = getMappedEntity(query.getEntityClass());
+        String sql = compiledQueries.computeIfAbsent(queryShape(query, false), shape -> compileQuery(mappedEntity, query, false));
+        streamInternal(StatementType.QUERY, query.getEntityClass(), mappedEntity, sql, queryParameters(mappedEntity, query, false), fetchSize, consumer);
+    }
+
+    long count(Query<?> query) throws Exception {
+        MappedEntity mappedEntity = getMappedEntity(query.getEntityClass());
+        String sql = compiledQueries.computeIfAbsent(queryShape(query, true), shape -> compileQuery(mappedEntity, query, true));
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, queryParameters(mappedEntity, query, true));
+            try (ResultSet rs = ps.executeQuery()) {
+                long count = rs.next() ? rs.getLong(1) : 0L;
+                failed = false;
+                return count;
+            }
+        } finally {
+            record(StatementType.COUNT, query.getEntityClass(), sql, 1, start, failed);
+        }
+    }
+
+    private <T> void streamInternal(StatementType type, Class<T> clazz, MappedEntity mappedEntity, String sql, List<Object> params,
+                                    int fetchSize, Consumer<? super T> consumer) throws Exception {
+        // Map fields are loaded for a chunk of rows at a time, so memory stays bounded by the chunk.
+        int chunkSize = mappedEntity.getMapFields().isEmpty() ? 1 : maxInParameters;
+        List<T> chunk = new ArrayList<>(chunkSize);
+        long start = System.nanoTime();
+        int rows = 0;
+        boolean failed = true;
+
+        DataSource dataSource = fetchSize > 0 ? streamDataSource : readDataSource;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            bind(ps, params);
+            if (fetchSize > 0) {
+                ps.setFetchSize(fetchSize);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    T instance = clazz.cast(mappedEntity.newInstance());
+                    for (MappedField field : mappedEntity.getAllFields()) {
+                        // fromColumn decodes codec columns and converts loosely typed values, e.g. SQLite integers to booleans.
+                        field.set(instance, fromColumn(field.getType(), rs.getObject(field.getName())));
+                    }
+                    chunk.add(instance);
+                    rows++;
+                    if (chunk.size() >= chunkSize) {
+                        emitChunk(conn, mappedEntity, chunk, consumer);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                emitChunk(conn, mappedEntity, chunk, consumer);
+            }
+            failed = false;
+        } finally {
+            record(type, clazz, sql, rows, start, failed);
+        }
+    }
+
+    private void record(StatementType type, Class<?> entityClass, String sql, int rows, long startNanos, boolean failed) {
+        StatementListener listener = statementListener;
+        if (listener != null) {
+            listener.onStatement(type, entityClass, sql, rows, System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * Describes everything about a query that affects its SQL text, but not its values.
+     * Queries with the same shape share one compiled statement.
+     */
+    private String queryShape(Query<?> query, boolean count) {
+        StringBuilder shape = new StringBuilder(query.getEntityClass().getName()).append(count ? "|count" : "|select");
+        for (Query.Condition condition : query.getConditions()) {
+            shape.append('|').append(condition.getColumn()).append(' ');
+            if (condition.getOperator() == null) {
+                shape.append("IN ").append(inListSize(condition.getValues().size()));
+            } else {
+                shape.append(condition.getOperator().name()).append(condition.getValues().get(0) == null ? " NULL" : "");
+            }
+        }
+        if (!count) {
+            for (Query.Order order : query.getOrders()) {
+                shape.append("|order ").append(order.getColumn()).append(order.isDescending() ? " DESC" : " ASC");
+            }
+            shape.append(query.getLimit() >= 0 ? "|limit" : "").append(query.getOffset() > 0 ? "|offset" : "");
+            shape.append(query.getAfter() != null ? "|after" : "");
+        }
+        return shape.toString();
+    }
+
+    private String compileQuery(MappedEntity mappedEntity, Query<?> query, boolean count) {
+        // Columns are resolved against the mapped fields, so only known, pre-validated names reach the SQL.
+        List<String> predicates = new ArrayList<>();
+        for (Query.Condition condition : query.getConditions()) {
+            String column = q(mappedEntity.getField(condition.getColumn()).getName());
+            if (condition.getOperator() == null) {
+                int size = inListSize(condition.getValues().size());
+                predicates.add(size == 0 ? "1 = 0" : column + " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")");
+            } else if (condition.getValues().get(0) == null) {
+                predicates.add(column + (condition.getOperator() == Operator.EQUALS ? " IS NULL" : " IS NOT NULL"));
+            } else {
+                predicates.add(column + " " + condition.getOperator().getSymbol() + " ?");
+            }
+        }
+        List<Query.Order> orders = queryOrders(mappedEntity, query);
+        // Counts ignore pagination, including the keyset position.
+        if (query.getAfter() != null && !count) {
+            // (a > ?) OR (a = ? AND b > ?) OR ..., flipped to < for descending columns.
+            List<String> seeks = new ArrayList<>();
+            for (int i = 0; i < orders.size(); i++) {
+                StringBuilder seek = new StringBuilder("(");
+                for (int j = 0; j < i; j++) {
+                    seek.append(q(orders.get(j).getColumn())).append(" = ? AND ");
+                }
+                seek.append(q(orders.get(i).getColumn())).append(orders.get(i).isDescending() ? " < ?)" : " > ?)");
+                seeks.add(seek.toString());
+            }
+            predicates.add("(" + String.join(" OR ", seeks) + ")");
+        }
+
+        StringBuilder sql = new StringBuilder(count ? "SELECT COUNT(*) FROM " : "SELECT * FROM ").append(q(mappedEntity.getTableName()));
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+        if (!count) {
+            if (!orders.isEmpty()) {
+                sql.append(" ORDER BY ").append(orders.stream()
+                        .map(o -> q(o.getColumn()) + (o.isDescending() ? " DESC" : " ASC"))
+                        .collect(Collectors.joining(", ")));
+            }
+            if (query.getLimit() >= 0) {
+                sql.append(" LIMIT ?");
+            } else if (query.getOffset() > 0) {
+                // OFFSET needs a LIMIT, so use the dialect's "no limit" value.
+                sql.append(" LIMIT ").append(dialect.getUnlimited());
+            }
+            if (query.getOffset() > 0) {
+                sql.append(" OFFSET ?");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Binds values in the same order that compileQuery emits placeholders.
+     */
+    private List<Object> queryParameters(MappedEntity mappedEntity, Query<?> query, boolean count) {
+        List<Object> params = new ArrayList<>();
+        for (Query.Condition condition : query.getConditions()) {
+            Class<?> type = mappedEntity.getField(condition.getColumn()).getType();
+            List<Object> values = condition.getValues().stream().map(v -> toColumn(type, v)).collect(Collectors.toList());
+            if (condition.getOperator() == null) {
+                params.addAll(values);
+                // Pad with the last value, which does not change the result.
+                for (int i = values.size(); i < inListSize(values.size()); i++) {
+                    params.add(values.get(values.size() - 1));
+                }
+            } else if (values.get(0) != null) {
+                params.add(values.get(0));
+            }
+        }
+        if (query.getAfter() != null && !count) {
+            List<Query.Order> orders = queryOrders(mappedEntity, query);
+            for (int i = 0; i < orders.size(); i++) {
+                for (int j = 0; j <= i; j++) {
+                    MappedField field = mappedEntity.getField(orders.get(j).getColumn());
+                    params.add(toColumn(field.getType(), field.get(query.getAfter())));
+                }
+            }
+        }
+        if (!count) {
+            if (query.getLimit() >= 0) params.add(query.getLimit());
+            if (query.getOffset() > 0) params.add(query.getOffset());
+        }
+        return params;
+    }
+
+    /**
+     * The query's ordering with canonical column names. The primary key is appended as a tie-breaker,
+     * so every row has a unique position and keyset pages line up with the first page.
+     */
+    private List<Query.Order> queryOrders(MappedEntity mappedEntity, Query<?> query) {
+        List<Query.Order> orders = new ArrayList<>();
+        boolean orderedByPrimaryKey = false;
+        for (Query.Order order : query.getOrders()) {
+            MappedField field = mappedEntity.getField(order.getColumn());
+            orderedByPrimaryKey |= field == mappedEntity.getPrimaryKey();
+            orders.add(new Query.Order(field.getName(), order.isDescending()));
+        }
+        if (!orders.isEmpty() && !orderedByPrimaryKey) {
+            orders.add(new Query.Order(mappedEntity.getPrimaryKey().getName(), false));
+        }
+        return orders;
+    }
+
+    /**
+     * Rounds IN lists up to a power of two, so lists of similar length share a compiled statement.
+     */
+    private static int inListSize(int size) {
+        return size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private <T> void emitChunk(Connection conn, MappedEntity mappedEntity, List<T> chunk, Consumer<? super T> consumer) throws Exception {
+        loadMapFields(conn, mappedEntity, chunk);
+        for (T instance : chunk) {
+            consumer.accept(instance);
+        }
+        chunk.clear();
+    }
+
+    private void upsertEntities(Connection conn, MappedEntity mappedEntity, Collection<?> entities) throws Exception {
+        MappedField pkField = mappedEntity.getPrimaryKey();
+        // The dialect lists the columns first and the primary key last, like getAllFields().
+        List<MappedField> allFields = mappedEntity.getAllFields();
+
+        // This query is safe as table and column names are pre-validated.
+        String upsertSql = dialect.upsert(mappedEntity.getTableName(), pkField.getName(),
+                mappedEntity.getColumns().stream().map(MappedField::getName).collect(Collectors.toList()));
+
+        try (PreparedStatement ps = conn.prepareStatement(upsertSql)) {
+            for (Object entity : entities) {
+                int i = 1;
+                for (MappedField field : allFields) {
+                    ps.setObject(i++, toColumn(field.getType(), field.get(entity)));
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Writes the @StoreAsTable maps of an entity. Maps that are tracked for this owner only write the
+     * keys that changed since the last save; any other map is rewritten in full. A tracked map is copied
+     * and starts tracking for this owner from that copy, and goes back to its previous state on rollback.
+     * The field itself is never replaced here, see {@link #trackMaps(Object)}.
+     */
+    private void saveMapFields(Connection conn, MappedEntity mappedEntity, Object entity, List<Runnable> onRollback) throws Exception {
+        MappedField pkField = mappedEntity.getPrimaryKey();
+        Object pkValue = pkField.get(entity);
+        Object ownerId = toColumn(pkField.getType(), pkValue);
+        for(MappedField mapField : mappedEntity.getMapFields()) {
+            Map<?, ?> map = (Map<?, ?>) mapField.get(entity);
+            if (map == null) continue;
+
+            // Use the pre-validated table name from the mapped entity.
+            String mapTableName = mappedEntity.getMapTableName(mapField);
+            if (map instanceof TrackedMap && ((TrackedMap<?, ?>) map).isTrackingFor(pkValue)) {
+                TrackedMap<?, ?> trackedMap = (TrackedMap<?, ?>) map;
+                TrackedMap.Changes changes = trackedMap.drainChanges();
+                onRollback.add(() -> trackedMap.restore(changes));
+                writeMapChanges(conn, mapTableName, mapField, ownerId, changes);
+                continue;
+            }
+
+            Map<?, ?> rows = map;
+            if (map instanceof TrackedMap) {
+                // The copy is taken under the map's lock, and puts made while it is written are tracked for the next save.
+                TrackedMap<?, ?> trackedMap = (TrackedMap<?, ?>) map;
+                TrackedMap.Snapshot snapshot = trackedMap.snapshotAndTrack(pkValue);
+                onRollback.add(() -> trackedMap.restore(snapshot));
+                rows = snapshot.getContents();
+            }
+
+            String deleteSql = "DELETE FROM " + q(mapTableName) + " WHERE " + q("owner_id") + " = ?";
+            try(PreparedStatement ps = conn.prepareStatement(deleteSql)) {
+                ps.setObject(1, ownerId);
+                ps.executeUpdate();
+            }
+
+            String insertSql = "INSERT INTO " + q(mapTableName) + " (" + q("owner_id") + ", " + q("map_key") + ", " + q("map_value") + ") VALUES (?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+                for (Map.Entry<?, ?> entry : rows.entrySet()) {
+                    ps.setObject(1, ownerId);
+                    ps.setObject(2, toColumn(mapField.getKeyType(), entry.getKey()));
+                    ps.setObject(3, toColumn(mapField.getValueType(), entry.getValue()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private void writeMapChanges(Connection conn, String mapTableName, MappedField mapField, Object ownerId, TrackedMap.Changes changes) throws SQLException {
+        if (changes.isEmpty()) return;
+        // Changed keys are deleted and re-inserted, which works whether or not the table has a key on (owner_id, map_key).
+        String deleteSql = "DELETE FROM " + q(mapTableName) + " WHERE " + q("owner_id") + " = ? AND " + q("map_key") + " = ?";
+        try (PreparedStatement ps = conn.prepareStatement(deleteSql)) {
+            for (Object key : changes.getDeletes()) {
+                ps.setObject(1, ownerId);
+                ps.setObject(2, toColumn(mapField.getKeyType(), key));
+                ps.addBatch();
+            }
+            for (Object key : changes.getUpserts().keySet()) {
+                ps.setObject(1, ownerId);
+                ps.setObject(2, toColumn(mapField.getKeyType(), key));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        if (changes.getUpserts().isEmpty()) return;
+        String insertSql = "INSERT INTO " + q(mapTableName) + " (" + q("owner_id") + ", " + q("map_key") + ", " + q("map_value") + ") VALUES (?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+            for (Map.Entry<Object, Object> entry : changes.getUpserts().entrySet()) {
+                ps.setObject(1, ownerId);
+                ps.setObject(2, toColumn(mapField.getKeyType(), entry.getKey()));
+                ps.setObject(3, toColumn(mapField.getValueType(), entry.getValue()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Loads the @StoreAsTable maps of all loaded instances with one query per map field
+     * (split into chunks of maxInParameters owners), instead of one query per instance and field.
+     */
+    private void loadMapFields(Connection conn, MappedEntity mappedEntity, List<?> instances) throws Exception {
+        if (mappedEntity.getMapFields().isEmpty()) return;
+        MappedField pkField = mappedEntity.getPrimaryKey();
+        List<Object> pkValues = new ArrayList<>(instances.size());
+        for (Object instance : instances) {
+            pkValues.add(pkField.get(instance));
+        }
+
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            Map<Object, Map<Object, Object>> mapsByOwner = new HashMap<>();
+            for (Object pkValue : pkValues) {
+                mapsByOwner.put(pkValue, mapField.newMap());
+            }
+            // Use the pre-validated table name from the mapped entity.
+            String mapTableName = mappedEntity.getMapTableName(mapField);
+            for (int from = 0; from < pkValues.size(); from += maxInParameters) {
+                List<Object> chunk = pkValues.subList(from, Math.min(from + maxInParameters, pkValues.size()));
+                String placeholders = chunk.stream().map(v -> "?").collect(Collectors.joining(", "));
+                String sql = "SELECT " + q("owner_id") + ", " + q("map_key") + ", " + q("map_value") + " FROM " + q(mapTableName) +
+                        " WHERE " + q("owner_id") + " IN (" + placeholders + ")";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    int i = 1;
+                    for (Object pkValue : chunk) {
+                        ps.setObject(i++, toColumn(pkField.getType(), pkValue));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            // Convert the stored owner id back to the primary key type so it matches the loaded instances.
+                            Map<Object, Object> map = mapsByOwner.get(fromColumn(pkField.getType(), rs.getObject("owner_id")));
+                            if (map != null) {
+                                map.put(fromColumn(mapField.getKeyType(), rs.getObject("map_key")),
+                                        fromColumn(mapField.getValueType(), rs.getObject("map_value")));
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < instances.size(); i++) {
+                Object pkValue = pkValues.get(i);
+                Map<Object, Object> map = mapsByOwner.get(pkValue);
+                mapField.set(instances.get(i), mapField.isTrackable() ? new TrackedMap<>(map, pkValue) : map);
+            }
+        }
+    }
+
+    private void ensureSchemaIsUpToDate(Connection conn, MappedEntity mappedEntity) throws SQLException {
+        if (!tableExists(conn, mappedEntity.getTableName())) {
+            createTable(conn, mappedEntity);
+        } else {
+            alterTable(conn, mappedEntity);
+        }
+        ensureIndexes(conn, mappedEntity);
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            // Use the pre-validated map table name.
+            String mapTableName = mappedEntity.getMapTableName(mapField);
+            if (!tableExists(conn, mapTableName)) {
+                createMapTable(conn, mapTableName, mappedEntity.getPrimaryKey(), mapField);
+            } else {
+                ensureMapTableIndex(conn, mapTableName, mapField);
+            }
+        }
+    }
+
+    private void createTable(Connection conn, MappedEntity mappedEntity) throws SQLException {
+        // This is safe because all identifiers are pre-validated.
+        String columns = mappedEntity.getAllFields().stream()
+                .map(f -> q(f.getName()) + " " + columnType(f.getType()) + (f == mappedEntity.getPrimaryKey() ? " PRIMARY KEY" : ""))
+                .collect(Collectors.joining(", "));
+        String sql = "CREATE TABLE IF NOT EXISTS " + q(mappedEntity.getTableName()) + " (" + columns + ")";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private void createMapTable(Connection conn, String tableName, MappedField ownerPk, MappedField mapField) throws SQLException {
+        // The tableName parameter is pre-validated by the caller.
+        boolean keyIndexable = dialect.isIndexable(columnType(mapField.getKeyType()));
+        String sql = "CREATE TABLE IF NOT EXISTS " + q(tableName) + " (" +
+                     q("owner_id") + " " + columnType(ownerPk.getType()) + ", " +
+                     q("map_key") + " " + columnType(mapField.getKeyType()) + ", " +
+                     q("map_value") + " " + columnType(mapField.getValueType()) +
+                     (keyIndexable ? ", PRIMARY KEY (" + q("owner_id") + ", " + q("map_key") + "))" : ")");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        if (!keyIndexable) {
+            // The key cannot be part of a primary key in this dialect, so index the owner only.
+            createIndex(conn, tableName + "_owner", tableName, Collections.singletonList("owner_id"));
+        }
+    }
+
+    /**
+     * Adds an index for per-owner lookups to a map table created before map tables had a primary key.
+     */
+    private void ensureMapTableIndex(Connection conn, String tableName, MappedField mapField) throws SQLException {
+        // The tableName parameter is pre-validated by the caller.
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(null, null, tableName, false, true)) {
+            while (rs.next()) {
+                if (rs.getShort("ORDINAL_POSITION") == 1 && "owner_id".equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    return;
+                }
+            }
+        }
+        // A plain index, since existing rows are not guaranteed to be unique per key.
+        createIndex(conn, tableName + "_owner", tableName, dialect.isIndexable(columnType(mapField.getKeyType()))
+                ? Arrays.asList("owner_id", "map_key") : Collections.singletonList("owner_id"));
+    }
+
+    /**
+     * Creates the @Index indexes that the table does not have yet.
+     */
+    private void ensureIndexes(Connection conn, MappedEntity mappedEntity) throws SQLException {
+        if (mappedEntity.getIndexes().isEmpty()) return;
+        Set<String> existingIndexes = new HashSet<>();
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(null, null, mappedEntity.getTableName(), false, true)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                if (indexName != null) existingIndexes.add(indexName.toLowerCase());
+            }
+        }
+        for (Map.Entry<String, List<MappedField>> index : mappedEntity.getIndexes().entrySet()) {
+            if (existingIndexes.contains(index.getKey().toLowerCase())) continue;
+            createIndex(conn, index.getKey(), mappedEntity.getTableName(),
+                    index.getValue().stream().map(MappedField::getName).collect(Collectors.toList()));
+        }
+    }
+
+    private void createIndex(Connection conn, String indexName, String tableName, List<String> columns) throws SQLException {
+        // Index, table and column names are pre-validated.
+        String sql = "CREATE INDEX " + q(indexName) + " ON " + q(tableName) + " (" +
+                columns.stream().map(this::q).collect(Collectors.joining(", ")) + ")";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private void alterTable(Connection conn, MappedEntity mappedEntity) throws SQLException {
+        // This is safe because all identifiers are pre-validated.
+        DatabaseMetaData meta = conn.getMetaData();
+        List<String> existingColumns = new ArrayList<>();
+        try (ResultSet rs = meta.getColumns(null, null, mappedEntity.getTableName(), null)) {
+            while(rs.next()) {
+                existingColumns.add(rs.getString("COLUMN_NAME").toLowerCase());
+            }
+        }
+        for(MappedField field : mappedEntity.getAllFields()) {
+            if(!existingColumns.contains(field.getName().toLowerCase())) {
+                String sql = "ALTER TABLE " + q(mappedEntity.getTableName()) + " ADD COLUMN " + q(field.getName()) + " " + columnType(field.getType());
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+    }
+
+    private boolean tableExists(Connection conn, String tableName) throws SQLException {
+        // The tableName is pre-validated by callers.
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, tableName, null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Quotes a pre-validated identifier for the dialect.
+     */
+    private String q(String identifier) {
+        return dialect.quote(identifier);
+    }
+
+    /**
+     * @return The column type for a field, map key or map value type.
+     */
+    private String columnType(Class<?> type) {
+        ColumnCodec<?> codec = codecFor(type);
+        if (codec != null) return dialect.getBinaryColumnType(codec.getFixedLength());
+        return dialect.getColumnType(type.isEnum() ? String.class : type);
+    }
+
+    /**
+     * @return The registered codec for a type, an ObjectCodec for types without a column type of their
+     *         own, or null for types the dialect stores directly. Other JDK types, such as Timestamp or
+     *         BigDecimal, are also left to the driver.
+     */
+    private ColumnCodec<?> codecFor(Class<?> type) {
+        ColumnCodec<?> codec = codecs.get(type);
+        if (codec != null || isDirectType(type) || !ObjectCodec.supports(type)) return codec;
+        return codecs.computeIfAbsent(type, ObjectCodec::new);
+    }
+
+    private static boolean isDirectType(Class<?> type) {
+        return type == int.class || type == Integer.class || type == long.class || type == Long.class
+                || type == double.class || type == Double.class || type == float.class || type == Float.class
+                || type == short.class || type == Short.class || type == byte.class || type == Byte.class
+                || type == boolean.class || type == Boolean.class || type == String.class || type == UUID.class
+                || type.isEnum();
+    }
+
+    /**
+     * Converts a field value to the value bound to its column.
+     */
+    @SuppressWarnings("unchecked")
+    private Object toColumn(Class<?> type, Object value) {
+        if (value == null) return null;
+        ColumnCodec<Object> codec = (ColumnCodec<Object>) codecFor(type);
+        if (codec != null) return codec.encode(value);
+        // Bound as text, which drivers do not do for these types themselves.
+        if (value instanceof UUID) return value.toString();
+        if (value instanceof Enum) return ((Enum<?>) value).name();
+        return value;
+    }
+
+    /**
+     * Converts a column value back to the field's type.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object fromColumn(Class<?> type, Object value) {
+        if (value == null) return null;
+        ColumnCodec<?> codec = codecFor(type);
+        // Values from before a codec was registered, e.g. text UUIDs, are converted instead of decoded.
+        if (codec != null && value instanceof byte[]) return codec.decode((byte[]) value);
+        if (type.isEnum() && value instanceof String) return Enum.valueOf((Class) type, (String) value);
+        return MappedField.convert(type, value);
+    }
+
+    private MappedEntity getMappedEntity(Class<?> clazz) {
+        return entityCache.computeIfAbsent(clazz, this::analyzeClass);
+    }
+    
+    private MappedEntity analyzeClass(Class<?> clazz) {
+        MappedEntity mappedEntity = MappedEntity.analyze(clazz);
+        // Table, column and index names end up in SQL statements, so they are validated here.
+        validateIdentifier(mappedEntity.getTableName());
+        for (MappedField field : mappedEntity.getAllFields()) {
+            validateIdentifier(field.getName());
+        }
+        for (MappedField mapField : mappedEntity.getMapFields()) {
+            validateIdentifier(mapField.getName());
+            validateIdentifier(mappedEntity.getMapTableName(mapField));
+        }
+        for (Map.Entry<String, List<MappedField>> index : mappedEntity.getIndexes().entrySet()) {
+            validateIdentifier(index.getKey());
+            for (MappedField field : index.getValue()) {
+                if (!dialect.isIndexable(columnType(field.getType()))) {
+                    throw new IllegalStateException("Field " + clazz.getSimpleName() + "." + field.getName() + " is stored as " + columnType(field.getType()) + " and cannot be indexed.");
+                }
+            }
+        }
+        return mappedEntity;
+    }
+
+    /**
+     * Validates an SQL identifier (e.g., table or column name) to prevent SQL injection.
+     * Allows only alphanumeric characters and underscores, and must start with a letter or underscore.
+     * @param identifier The identifier to validate.
+     * @throws IllegalArgumentException if the identifier is invalid.
+     */
+    private void validateIdentifier(String identifier) {
+        if (identifier == null || identifier.isEmpty() || !identifier.matches("^[a-zA-Z_][a-zA-Z0-9_]*$")) {
+            throw new IllegalArgumentException("Invalid or potentially unsafe SQL identifier: " + identifier + ". Only alphanumeric characters and underscores are allowed, and it must not start with a number.");
+        }
+    }
+}
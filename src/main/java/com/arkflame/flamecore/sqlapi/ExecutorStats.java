@@ -0,0 +1,49 @@
+package com.arkflame.flamecore.sqlapi;
+
+/**
+ * An immutable snapshot of the database executor's queue and latency counters.
+ */
+public final class ExecutorStats {
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final int activeThreads;
+    private final int poolSize;
+    private final long completedTasks;
+    private final long rejectedTasks;
+    private final double averageQueueWaitMillis;
+    private final double maxQueueWaitMillis;
+    private final double averageExecutionMillis;
+    private final double maxExecutionMillis;
+
+    public ExecutorStats(int queueDepth, int queueCapacity, int activeThreads, int poolSize, long completedTasks, long rejectedTasks,
+                         double averageQueueWaitMillis, double maxQueueWaitMillis, double averageExecutionMillis, double maxExecutionMillis) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.activeThreads = activeThreads;
+        this.poolSize = poolSize;
+        this.completedTasks = completedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.averageQueueWaitMillis = averageQueueWaitMillis;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+        this.averageExecutionMillis = averageExecutionMillis;
+        this.maxExecutionMillis = maxExecutionMillis;
+    }
+
+    public int getQueueDepth() { return queueDepth; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public int getActiveThreads() { return activeThreads; }
+    public int getPoolSize() { return poolSize; }
+    public long getCompletedTasks() { return completedTasks; }
+    public long getRejectedTasks() { return rejectedTasks; }
+    public double getAverageQueueWaitMillis() { return averageQueueWaitMillis; }
+    public double getMaxQueueWaitMillis() { return maxQueueWaitMillis; }
+    public double getAverageExecutionMillis() { return averageExecutionMillis; }
+    public double getMaxExecutionMillis() { return maxExecutionMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("ExecutorStats{queue=%d/%d, active=%d/%d, completed=%d, rejected=%d, wait avg=%.2fms max=%.2fms, exec avg=%.2fms max=%.2fms}",
+                queueDepth, queueCapacity, activeThreads, poolSize, completedTasks, rejectedTasks,
+                averageQueueWaitMillis, maxQueueWaitMillis, averageExecutionMillis, maxExecutionMillis);
+    }
+}
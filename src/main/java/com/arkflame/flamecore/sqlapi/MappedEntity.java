@@ -0,0 +1,184 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.arkflame.flamecore.sqlapi.annotations.Index;
+import com.arkflame.flamecore.sqlapi.annotations.PrimaryKey;
+import com.arkflame.flamecore.sqlapi.annotations.StoreAsTable;
+import com.arkflame.flamecore.sqlapi.annotations.Transient;
+
+/**
+ * How an entity class is stored: its primary key, plain fields, @StoreAsTable maps and @Index groups,
+ * found once per class from the mapping annotations. Shared by the SQL and MongoDB mappers, which
+ * only differ in how they write the values.
+ * This class is not intended for direct use. It is managed by the database APIs.
+ */
+public final class MappedEntity {
+    private final Class<?> clazz;
+    private final String tableName;
+    private final MappedField primaryKey;
+    private final List<MappedField> columns;
+    private final List<MappedField> allFields;
+    private final List<MappedField> mapFields;
+    private final Map<String, List<MappedField>> indexes;
+    // Column fields by lower-case name, for resolving query builder columns.
+    private final Map<String, MappedField> fieldsByName = new HashMap<>();
+    // Resolved once per class; null if the entity has no no-arg constructor.
+    private final MethodHandle constructor;
+
+    private MappedEntity(Class<?> clazz, String tableName, MappedField primaryKey, List<MappedField> columns, List<MappedField> mapFields,
+                         Map<String, List<MappedField>> indexes) {
+        this.clazz = clazz;
+        this.tableName = tableName;
+        this.primaryKey = primaryKey;
+        this.columns = columns;
+        this.mapFields = mapFields;
+        this.allFields = new ArrayList<>(columns);
+        this.allFields.add(primaryKey);
+        this.indexes = indexes;
+        for (MappedField field : allFields) {
+            fieldsByName.put(field.getName().toLowerCase(), field);
+        }
+        this.constructor = resolveConstructor(clazz);
+    }
+
+    /**
+     * Reads the mapping annotations of an entity class. Names are not validated here, since what
+     * is allowed depends on the database.
+     * @throws IllegalStateException if the class does not have exactly one @PrimaryKey field.
+     */
+    public static MappedEntity analyze(Class<?> clazz) {
+        String tableName = clazz.getSimpleName().toLowerCase() + "s";
+        MappedField primaryKey = null;
+        List<MappedField> columns = new ArrayList<>();
+        List<MappedField> mapFields = new ArrayList<>();
+        Map<String, List<MappedField>> indexes = new LinkedHashMap<>();
+
+        for (Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+            if (findAnnotation(field, Transient.class) != null) continue;
+            field.setAccessible(true);
+
+            if (findAnnotation(field, PrimaryKey.class) != null) {
+                if (primaryKey != null) {
+                    throw new IllegalStateException("Entity " + clazz.getSimpleName() + " must not have more than one @PrimaryKey field.");
+                }
+                primaryKey = new MappedField(field);
+            } else if (findAnnotation(field, StoreAsTable.class) != null) {
+                if (Map.class.isAssignableFrom(field.getType())) {
+                    mapFields.add(new MappedField(field));
+                }
+            } else {
+                MappedField column = new MappedField(field);
+                columns.add(column);
+                Annotation index = findAnnotation(field, Index.class);
+                if (index != null) {
+                    String indexName = indexName(index);
+                    indexName = indexName.isEmpty() ? tableName + "_" + field.getName() : indexName;
+                    indexes.computeIfAbsent(indexName, k -> new ArrayList<>()).add(column);
+                }
+            }
+        }
+        if (primaryKey == null) {
+            throw new IllegalStateException("Entity " + clazz.getSimpleName() + " must have a @PrimaryKey field.");
+        }
+        return new MappedEntity(clazz, tableName, primaryKey, columns, mapFields, indexes);
+    }
+
+    public Class<?> getEntityClass() { return clazz; }
+    String getEntityName() { return clazz.getSimpleName(); }
+
+    /**
+     * @return The lower-case plural of the class name, used as the table or collection name.
+     */
+    public String getTableName() { return tableName; }
+    public MappedField getPrimaryKey() { return primaryKey; }
+
+    /**
+     * @return The plain fields, without the primary key and the @StoreAsTable maps.
+     */
+    public List<MappedField> getColumns() { return columns; }
+    public List<MappedField> getMapFields() { return mapFields; }
+    String getMapTableName(MappedField mapField) { return tableName + "_" + mapField.getName(); }
+    List<MappedField> getAllFields() { return allFields; }
+
+    /**
+     * @return The plain fields of each index, by index name.
+     */
+    public Map<String, List<MappedField>> getIndexes() { return indexes; }
+
+    MappedField findField(String column) {
+        return fieldsByName.get(column.toLowerCase());
+    }
+
+    /**
+     * @return The primary key or plain field with the given name, ignoring case.
+     * @throws IllegalArgumentException if there is no such field.
+     */
+    public MappedField getField(String column) {
+        MappedField field = column == null ? null : fieldsByName.get(column.toLowerCase());
+        if (field == null) {
+            throw new IllegalArgumentException("Entity " + clazz.getSimpleName() + " has no column named " + column + ".");
+        }
+        return field;
+    }
+
+    public Object newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException("Entity " + clazz.getSimpleName() + " must have a no-argument constructor.");
+        }
+        try {
+            return constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to instantiate " + clazz.getSimpleName(), t);
+        }
+    }
+
+    /**
+     * Finds a mapping annotation on a field: either the annotation itself, or an API-specific annotation
+     * (e.g. mysqlapi's @PrimaryKey) that is marked with it.
+     */
+    public static Annotation findAnnotation(Field field, Class<? extends Annotation> type) {
+        for (Annotation annotation : field.getDeclaredAnnotations()) {
+            if (annotation.annotationType() == type || annotation.annotationType().isAnnotationPresent(type)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String indexName(Annotation index) {
+        if (index instanceof Index) {
+            return ((Index) index).value();
+        }
+        try {
+            // API-specific @Index annotations declare the same value() element.
+            return (String) index.annotationType().getMethod("value").invoke(index);
+        } catch (ReflectiveOperationException e) {
+            return "";
+        }
+    }
+
+    private static MethodHandle resolveConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
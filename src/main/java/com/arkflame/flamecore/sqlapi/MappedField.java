@@ -0,0 +1,142 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A mapped field with getter and setter MethodHandles resolved once per class,
+ * so row mapping does not go through reflective Field access.
+ * This class is not intended for direct use. It is managed by the database APIs.
+ */
+public final class MappedField {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final Class<?> type;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    // Only set for @StoreAsTable map fields.
+    private final Class<?> keyType;
+    private final Class<?> valueType;
+    private final MethodHandle mapConstructor;
+
+    MappedField(Field field) {
+        this.field = field;
+        this.type = field.getType();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            if (Map.class.isAssignableFrom(type)) {
+                ParameterizedType mapType = (ParameterizedType) field.getGenericType();
+                this.keyType = rawType(mapType.getActualTypeArguments()[0]);
+                this.valueType = rawType(mapType.getActualTypeArguments()[1]);
+                this.mapConstructor = lookup.findConstructor(mapImplementation(type), MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Map.class));
+            } else {
+                this.keyType = null;
+                this.valueType = null;
+                this.mapConstructor = null;
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot map field " + field.getDeclaringClass().getSimpleName() + "." + field.getName(), e);
+        }
+    }
+
+    public String getName() { return field.getName(); }
+    public Class<?> getType() { return type; }
+    public Class<?> getKeyType() { return keyType; }
+    public Class<?> getValueType() { return valueType; }
+
+    /**
+     * @return The declared type with its type arguments, e.g. for converting list elements.
+     */
+    public Type getGenericType() { return field.getGenericType(); }
+
+    /**
+     * @return true if the field can hold a TrackedMap, i.e. it is declared as Map or AbstractMap.
+     */
+    boolean isTrackable() { return type.isAssignableFrom(TrackedMap.class); }
+
+    public Object get(Object entity) {
+        try {
+            return getter.invokeExact(entity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    public void set(Object entity, Object value) {
+        Object converted = convert(type, value);
+        // Leave primitives at their default value for SQL NULLs.
+        if (converted == null && type.isPrimitive()) return;
+        try {
+            setter.invokeExact(entity, converted);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<Object, Object> newMap() {
+        try {
+            return (Map<Object, Object>) mapConstructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Converts a JDBC value to the Java type of a field. The MethodHandle setters do not widen
+     * or unbox across types the way Field.set does, so numbers are converted explicitly.
+     */
+    static Object convert(Class<?> type, Object value) {
+        if (value == null || type == null || type.isInstance(value)) return value;
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == int.class || type == Integer.class) return number.intValue();
+            if (type == long.class || type == Long.class) return number.longValue();
+            if (type == double.class || type == Double.class) return number.doubleValue();
+            if (type == float.class || type == Float.class) return number.floatValue();
+            if (type == short.class || type == Short.class) return number.shortValue();
+            if (type == byte.class || type == Byte.class) return number.byteValue();
+            if (type == boolean.class || type == Boolean.class) return number.intValue() != 0;
+        }
+        if (type == boolean.class && value instanceof Boolean) return value;
+        if (type == UUID.class && value instanceof String) return UUID.fromString((String) value);
+        if (type == String.class) return value.toString();
+        return value;
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return (Class<?>) type;
+    }
+
+    private static Class<?> mapImplementation(Class<?> declaredType) {
+        if (!declaredType.isInterface() && !Modifier.isAbstract(declaredType.getModifiers())) return declaredType;
+        if (declaredType.isAssignableFrom(HashMap.class)) return HashMap.class;
+        if (declaredType.isAssignableFrom(TreeMap.class)) return TreeMap.class;
+        if (declaredType.isAssignableFrom(ConcurrentHashMap.class)) return ConcurrentHashMap.class;
+        throw new IllegalArgumentException("Unsupported map type: " + declaredType.getName());
+    }
+}
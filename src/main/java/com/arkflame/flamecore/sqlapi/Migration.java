@@ -0,0 +1,67 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A versioned schema change. Migrations are applied once, in version order, when the database API's
+ * {@code migrate} method runs at startup. Applied versions are recorded per plugin in the
+ * flamecore_schema_version table.
+ *
+ * Example:
+ * <pre>{@code
+ * dbAPI.addMigration(Migration.of(1, "Rename coins to balance",
+ *         "ALTER TABLE playerdatas RENAME COLUMN coins TO balance"));
+ * }</pre>
+ */
+public final class Migration {
+    private final int version;
+    private final String description;
+    private final Step step;
+
+    private Migration(int version, String description, Step step) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Migration versions must be positive.");
+        }
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    /**
+     * Creates a migration that runs the given SQL statements in order.
+     */
+    public static Migration of(int version, String description, String... statements) {
+        return new Migration(version, description, connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : statements) {
+                    stmt.execute(sql);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a migration that runs custom code, e.g. to move data between tables.
+     */
+    public static Migration of(int version, String description, Step step) {
+        return new Migration(version, description, step);
+    }
+
+    public int getVersion() { return version; }
+    public String getDescription() { return description; }
+
+    void apply(Connection connection) throws SQLException {
+        step.apply(connection);
+    }
+
+    /**
+     * The work of a migration. It runs in a transaction that also records the version, although
+     * MySQL commits DDL statements immediately.
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,556 @@
+package com.arkflame.flamecore.sqlapi;
+
+import com.arkflame.flamecore.sqlapi.annotations.Transient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * The default codec for field types without a column type of their own, such as nested objects, lists
+ * and arrays. Values are written in a compact tagged format: integers as variable-length numbers,
+ * strings as UTF-8, and objects as their field names and values. Keeping the field names lets rows
+ * written before a field was added or removed still be read. Class names are only written when a
+ * value's class differs from the declared type. Since the bytes may come from a shared cache, a stored
+ * class name is only read if the class appears in the codec type's declared fields, including the type
+ * arguments of collections and maps, or is a subclass of the field type it is read for.
+ * This class is not intended for direct use. It is managed by EntityMapper.
+ */
+final class ObjectCodec implements ColumnCodec<Object> {
+    // Guards against reference cycles, which this format cannot represent.
+    private static final int MAX_DEPTH = 32;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int BYTE = 3;
+    private static final int SHORT = 4;
+    private static final int CHAR = 5;
+    private static final int INT = 6;
+    private static final int LONG = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int STRING = 10;
+    private static final int UUID_VALUE = 11;
+    private static final int ENUM = 12;
+    private static final int BYTES = 13;
+    private static final int ARRAY = 14;
+    private static final int LIST = 15;
+    private static final int SET = 16;
+    private static final int MAP = 17;
+    private static final int OBJECT = 18;
+    private static final int BIG_INTEGER = 19;
+    private static final int BIG_DECIMAL = 20;
+    private static final int DATE = 21;
+    private static final int TIMESTAMP = 22;
+    private static final int INSTANT = 23;
+    private static final int LOCAL_DATE = 24;
+    private static final int LOCAL_TIME = 25;
+    private static final int LOCAL_DATE_TIME = 26;
+
+    // Cached on the classes themselves, so plugin classes can still be unloaded after a reload.
+    private static final ClassValue<ObjectLayout> layouts = new ClassValue<ObjectLayout>() {
+        @Override
+        protected ObjectLayout computeValue(Class<?> type) {
+            return new ObjectLayout(type);
+        }
+    };
+
+    // The classes named by the declared fields reachable from a type, by class name.
+    private static final ClassValue<Map<String, Class<?>>> declaredTypes = new ClassValue<Map<String, Class<?>>>() {
+        @Override
+        protected Map<String, Class<?>> computeValue(Class<?> type) {
+            Map<String, Class<?>> types = new HashMap<>();
+            collectDeclaredTypes(type, types);
+            return types;
+        }
+    };
+
+    private final Class<?> type;
+    private final Map<String, Class<?>> knownTypes;
+
+    /**
+     * @throws IllegalStateException if a field reachable from the type has a JDK type this codec cannot write.
+     */
+    ObjectCodec(Class<?> type) {
+        this.type = type;
+        this.knownTypes = declaredTypes.get(type);
+        for (Class<?> known : knownTypes.values()) {
+            if (isPlatformClass(known) && !known.isArray() && !known.isEnum() && !isContainerType(known) && !isValueType(known)) {
+                throw new IllegalStateException("Cannot store " + known.getName() + ", which is used by the fields of " + type.getSimpleName()
+                        + ", in the compact format used for nested objects and the Redis cache. Use a supported type, or mark the field @Transient.");
+            }
+        }
+    }
+
+    /**
+     * @return Whether a column of a declared type is written by this codec. Other JDK classes, such as
+     *         Timestamp or BigDecimal, are left to the database driver; inside nested values the
+     *         common ones are written by this codec, see {@link #isValueType(Class)}.
+     */
+    static boolean supports(Class<?> type) {
+        return type == Object.class || type.isArray() || Collection.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type) || !isPlatformClass(type);
+    }
+
+    private static boolean isContainerType(Class<?> type) {
+        return type == Object.class || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
+    }
+
+    /**
+     * @return Whether a JDK type is written with a tag of its own. Other JDK classes cannot be written,
+     *         because their private fields cannot be read on Java 16 and later.
+     */
+    private static boolean isValueType(Class<?> type) {
+        return type.isPrimitive() || type == Boolean.class || type == Character.class || Number.class.isAssignableFrom(type)
+                && (type.getName().startsWith("java.lang.") || type == BigInteger.class || type == BigDecimal.class)
+                || type == String.class || type == UUID.class || Date.class.isAssignableFrom(type) || type == Instant.class
+                || type == LocalDate.class || type == LocalTime.class || type == LocalDateTime.class;
+    }
+
+    private static boolean isPlatformClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, value, type, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode " + type.getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return read(in, type, 0);
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot decode " + type.getSimpleName(), e);
+        }
+    }
+
+    private void write(DataOutputStream out, Object value, Class<?> declared, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Nested objects are deeper than " + MAX_DEPTH + " levels. Reference cycles are not supported.");
+        }
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            writeVarLong(out, (Short) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            writeVarLong(out, (Character) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            writeVarLong(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, (Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeClassName(out, ((Enum<?>) value).getDeclaringClass(), declared);
+            writeString(out, ((Enum<?>) value).name());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeVarLong(out, ((BigDecimal) value).scale());
+            writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            writeVarLong(out, ((Timestamp) value).getTime());
+            writeVarLong(out, ((Timestamp) value).getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            writeVarLong(out, ((Date) value).getTime());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            writeVarLong(out, ((Instant) value).getEpochSecond());
+            writeVarLong(out, ((Instant) value).getNano());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            writeVarLong(out, ((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalTime) {
+            out.writeByte(LOCAL_TIME);
+            writeVarLong(out, ((LocalTime) value).toNanoOfDay());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            writeVarLong(out, ((LocalDateTime) value).toLocalDate().toEpochDay());
+            writeVarLong(out, ((LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.writeByte(BYTES);
+            writeVarLong(out, array.length);
+            out.write(array);
+        } else if (value.getClass().isArray()) {
+            out.writeByte(ARRAY);
+            writeClassName(out, value.getClass(), declared);
+            int length = Array.getLength(value);
+            writeVarLong(out, length);
+            Class<?> componentType = value.getClass().getComponentType();
+            for (int i = 0; i < length; i++) {
+                write(out, Array.get(value, i), componentType, depth + 1);
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(value instanceof Set ? SET : LIST);
+            writeVarLong(out, collection.size());
+            for (Object element : collection) {
+                write(out, element, Object.class, depth + 1);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), Object.class, depth + 1);
+                write(out, entry.getValue(), Object.class, depth + 1);
+            }
+        } else {
+            out.writeByte(OBJECT);
+            writeClassName(out, value.getClass(), declared);
+            ObjectLayout layout = layout(value.getClass());
+            writeVarLong(out, layout.fields.size());
+            for (Field field : layout.fields) {
+                writeString(out, field.getName());
+                try {
+                    write(out, field.get(value), field.getType(), depth + 1);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private Object read(DataInputStream in, Class<?> declared, int depth) throws IOException, ReflectiveOperationException {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Nested objects are deeper than " + MAX_DEPTH + " levels.");
+        }
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL: return null;
+            case TRUE: return true;
+            case FALSE: return false;
+            case BYTE: return in.readByte();
+            case SHORT: return (short) readVarLong(in);
+            case CHAR: return (char) readVarLong(in);
+            case INT: return (int) readVarLong(in);
+            case LONG: return readVarLong(in);
+            case FLOAT: return in.readFloat();
+            case DOUBLE: return in.readDouble();
+            case STRING: return readString(in);
+            case UUID_VALUE: return new UUID(in.readLong(), in.readLong());
+            case ENUM: {
+                Class<?> enumType = readClass(in, declared);
+                String name = readString(in);
+                return enumType.isEnum() ? enumConstant(enumType, name) : name;
+            }
+            case BIG_INTEGER: return new BigInteger(readBytes(in));
+            case BIG_DECIMAL: {
+                int scale = (int) readVarLong(in);
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            }
+            case TIMESTAMP: {
+                Timestamp timestamp = new Timestamp(readVarLong(in));
+                timestamp.setNanos((int) readVarLong(in));
+                return timestamp;
+            }
+            case DATE: {
+                long millis = readVarLong(in);
+                // java.sql.Date and Time fields get their own class back.
+                if (declared == java.sql.Date.class) return new java.sql.Date(millis);
+                if (declared == Time.class) return new Time(millis);
+                return new Date(millis);
+            }
+            case INSTANT: return Instant.ofEpochSecond(readVarLong(in), readVarLong(in));
+            case LOCAL_DATE: return LocalDate.ofEpochDay(readVarLong(in));
+            case LOCAL_TIME: return LocalTime.ofNanoOfDay(readVarLong(in));
+            case LOCAL_DATE_TIME: return LocalDateTime.of(LocalDate.ofEpochDay(readVarLong(in)), LocalTime.ofNanoOfDay(readVarLong(in)));
+            case BYTES: {
+                byte[] array = new byte[readLength(in)];
+                in.readFully(array);
+                return array;
+            }
+            case ARRAY: {
+                Class<?> arrayType = readClass(in, declared);
+                Class<?> componentType = arrayType.isArray() ? arrayType.getComponentType() : Object.class;
+                int length = readLength(in);
+                Object array = Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, read(in, componentType, depth + 1));
+                }
+                return array;
+            }
+            case LIST:
+            case SET: {
+                int size = readLength(in);
+                Collection<Object> collection = newCollection(declared, tag == SET, size);
+                for (int i = 0; i < size; i++) {
+                    collection.add(read(in, Object.class, depth + 1));
+                }
+                return collection;
+            }
+            case MAP: {
+                int size = readLength(in);
+                Map<Object, Object> map = newMap(declared, size);
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in, Object.class, depth + 1), read(in, Object.class, depth + 1));
+                }
+                return map;
+            }
+            case OBJECT: {
+                Class<?> objectType = readClass(in, declared);
+                int fieldCount = readLength(in);
+                if (objectType == Object.class || objectType.isInterface() || Modifier.isAbstract(objectType.getModifiers())) {
+                    // The concrete class is unknown, e.g. for a field that no longer exists, so keep the raw values.
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    for (int i = 0; i < fieldCount; i++) {
+                        values.put(readString(in), read(in, Object.class, depth + 1));
+                    }
+                    return values;
+                }
+                ObjectLayout layout = layout(objectType);
+                Object instance = layout.newInstance();
+                for (int i = 0; i < fieldCount; i++) {
+                    Field field = layout.fieldsByName.get(readString(in));
+                    Object value = read(in, field == null ? Object.class : field.getType(), depth + 1);
+                    // Values of removed fields are dropped, and primitives stay at their default for nulls.
+                    if (field != null && !(value == null && field.getType().isPrimitive())) {
+                        field.set(instance, value);
+                    }
+                }
+                return instance;
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> enumType, String name) {
+        return Enum.valueOf((Class) enumType, name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> declared, boolean set, int size) throws ReflectiveOperationException {
+        if (Collection.class.isAssignableFrom(declared) && !declared.isInterface() && !Modifier.isAbstract(declared.getModifiers())) {
+            return (Collection<Object>) declared.getDeclaredConstructor().newInstance();
+        }
+        if (SortedSet.class.isAssignableFrom(declared)) return new TreeSet<>();
+        return set ? new LinkedHashSet<>(size * 2) : new ArrayList<>(size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> newMap(Class<?> declared, int size) throws ReflectiveOperationException {
+        if (Map.class.isAssignableFrom(declared) && !declared.isInterface() && !Modifier.isAbstract(declared.getModifiers())) {
+            return (Map<Object, Object>) declared.getDeclaredConstructor().newInstance();
+        }
+        if (SortedMap.class.isAssignableFrom(declared)) return new TreeMap<>();
+        return new LinkedHashMap<>(size * 2);
+    }
+
+    /**
+     * Writes the class name, or an empty name if the reader can take the class from the declared type.
+     */
+    private static void writeClassName(DataOutputStream out, Class<?> actual, Class<?> declared) throws IOException {
+        writeString(out, actual == declared ? "" : actual.getName());
+    }
+
+    private Class<?> readClass(DataInputStream in, Class<?> declared) throws IOException, ClassNotFoundException {
+        String name = readString(in);
+        if (name.isEmpty()) return declared;
+        Class<?> known = knownTypes.get(name);
+        if (known != null) return known;
+        if (declared != Object.class) {
+            // Resolve through the entity's class loader, which can see the plugin's classes, without initializing it.
+            Class<?> resolved = Class.forName(name, false, type.getClassLoader());
+            if (declared.isAssignableFrom(resolved)) return resolved;
+        }
+        throw new IOException("Refusing to read " + name + ", which is not a declared type of " + type.getSimpleName());
+    }
+
+    /**
+     * Adds a declared type, and the field types and type arguments it leads to, to the known types.
+     */
+    private static void collectDeclaredTypes(Type declared, Map<String, Class<?>> types) {
+        if (declared instanceof ParameterizedType) {
+            collectDeclaredTypes(((ParameterizedType) declared).getRawType(), types);
+            for (Type argument : ((ParameterizedType) declared).getActualTypeArguments()) {
+                collectDeclaredTypes(argument, types);
+            }
+        } else if (declared instanceof GenericArrayType) {
+            collectDeclaredTypes(((GenericArrayType) declared).getGenericComponentType(), types);
+        } else if (declared instanceof WildcardType) {
+            for (Type bound : ((WildcardType) declared).getUpperBounds()) {
+                collectDeclaredTypes(bound, types);
+            }
+        } else if (declared instanceof Class) {
+            Class<?> clazz = (Class<?>) declared;
+            if (clazz.isPrimitive() || types.putIfAbsent(clazz.getName(), clazz) != null) return;
+            if (clazz.isArray()) {
+                collectDeclaredTypes(clazz.getComponentType(), types);
+            } else if (!clazz.isEnum() && !isPlatformClass(clazz)) {
+                for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+                        collectDeclaredTypes(field.getGenericType(), types);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        writeVarLong(out, value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[readLength(in)];
+        in.readFully(value);
+        return value;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[readLength(in)];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Writes a zigzag-encoded variable-length number: small positive and negative values take one byte.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+    private static ObjectLayout layout(Class<?> clazz) {
+        if (isPlatformClass(clazz)) {
+            throw new IllegalStateException("Cannot store " + clazz.getName() + " inside a nested object, list or map. "
+                    + "Move it to a field of its own, or register a ColumnCodec for the type that contains it.");
+        }
+        return layouts.get(clazz);
+    }
+
+    /**
+     * The stored fields and no-argument constructor of a nested object class, resolved once per class.
+     */
+    private static final class ObjectLayout {
+        private final List<Field> fields = new ArrayList<>();
+        private final Map<String, Field> fieldsByName = new LinkedHashMap<>();
+        private final Constructor<?> constructor;
+
+        ObjectLayout(Class<?> clazz) {
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+                    if (MappedEntity.findAnnotation(field, Transient.class) != null) continue;
+                    // A subclass field hides a superclass field of the same name.
+                    if (fieldsByName.containsKey(field.getName())) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                    fieldsByName.put(field.getName(), field);
+                }
+            }
+            try {
+                this.constructor = clazz.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(clazz.getSimpleName() + " needs a no-argument constructor to be stored as a nested object.", e);
+            }
+        }
+
+        Object newInstance() throws ReflectiveOperationException {
+            return constructor.newInstance();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.arkflame.flamecore.sqlapi;
+
+/**
+ * A comparison used by a {@link Query} condition.
+ */
+public enum Operator {
+    EQUALS("="),
+    NOT_EQUALS("<>"),
+    LESS_THAN("<"),
+    LESS_THAN_OR_EQUAL("<="),
+    GREATER_THAN(">"),
+    GREATER_THAN_OR_EQUAL(">=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    String getSymbol() {
+        return symbol;
+    }
+}
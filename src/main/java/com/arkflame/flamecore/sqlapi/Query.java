@@ -0,0 +1,203 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A fluent query over one entity class, created by {@code MySQLAPI.query(Class)} or {@code SQLiteAPI.query(Class)}.
+ * Conditions are combined with AND. The query is compiled into a prepared statement that is
+ * cached by its shape, so running the same kind of query with different values reuses it.
+ *
+ * Example:
+ * <pre>{@code
+ * dbAPI.query(PlayerData.class)
+ *      .where("clan", "red")
+ *      .and("kills", Operator.GREATER_THAN, 10)
+ *      .orderByDescending("kills")
+ *      .limit(10)
+ *      .list()
+ *      .thenAccept(top -> ...);
+ * }</pre>
+ */
+public final class Query<T> {
+    private final EntityMapper entityMapper;
+    private final TaskRunner runner;
+    private final Class<T> entityClass;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private int limit = -1;
+    private int offset = 0;
+    private T after;
+
+    Query(EntityMapper entityMapper, TaskRunner runner, Class<T> entityClass) {
+        this.entityMapper = entityMapper;
+        this.runner = runner;
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * Matches rows whose column equals the value. A null value matches NULL columns.
+     */
+    public Query<T> where(String column, Object value) {
+        return where(column, Operator.EQUALS, value);
+    }
+
+    /**
+     * Matches rows whose column compares to the value with the given operator.
+     * With a null value, only EQUALS (IS NULL) and NOT_EQUALS (IS NOT NULL) are allowed.
+     */
+    public Query<T> where(String column, Operator operator, Object value) {
+        if (value == null && operator != Operator.EQUALS && operator != Operator.NOT_EQUALS) {
+            throw new IllegalArgumentException("Null can only be compared with EQUALS or NOT_EQUALS.");
+        }
+        conditions.add(new Condition(column, operator, Collections.singletonList(value)));
+        return this;
+    }
+
+    /**
+     * Same as {@link #where(String, Object)}, for readability when chaining conditions.
+     */
+    public Query<T> and(String column, Object value) {
+        return where(column, value);
+    }
+
+    /**
+     * Same as {@link #where(String, Operator, Object)}, for readability when chaining conditions.
+     */
+    public Query<T> and(String column, Operator operator, Object value) {
+        return where(column, operator, value);
+    }
+
+    /**
+     * Matches rows whose column equals any of the values. An empty collection matches nothing.
+     */
+    public Query<T> in(String column, Collection<?> values) {
+        conditions.add(new Condition(column, null, new ArrayList<>(values)));
+        return this;
+    }
+
+    /**
+     * Matches rows whose column lies between min and max, both inclusive.
+     */
+    public Query<T> between(String column, Object min, Object max) {
+        where(column, Operator.GREATER_THAN_OR_EQUAL, min);
+        return where(column, Operator.LESS_THAN_OR_EQUAL, max);
+    }
+
+    public Query<T> orderBy(String column) {
+        orders.add(new Order(column, false));
+        return this;
+    }
+
+    public Query<T> orderByDescending(String column) {
+        orders.add(new Order(column, true));
+        return this;
+    }
+
+    public Query<T> limit(int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Limit must not be negative.");
+        this.limit = limit;
+        return this;
+    }
+
+    public Query<T> offset(int offset) {
+        if (offset < 0) throw new IllegalArgumentException("Offset must not be negative.");
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Keyset pagination: continues after the last row of the previous page.
+     * Unlike {@link #offset(int)}, the database seeks straight to the next page instead of reading and
+     * skipping every earlier row. The primary key is added as the final sort column to break ties,
+     * and the ordered columns must not be NULL.
+     * @param lastRow The last entity of the previous page, loaded with the same ordering.
+     */
+    public Query<T> after(T lastRow) {
+        if (orders.isEmpty()) {
+            throw new IllegalStateException("Keyset pagination needs at least one orderBy column.");
+        }
+        this.after = lastRow;
+        return this;
+    }
+
+    /**
+     * Loads all matching objects.
+     */
+    public CompletableFuture<List<T>> list() {
+        return runner.supply(() -> {
+            List<T> results = new ArrayList<>();
+            entityMapper.query(this, 0, results::add);
+            return results;
+        });
+    }
+
+    /**
+     * Loads the first matching object, or null if nothing matches.
+     */
+    public CompletableFuture<T> first() {
+        limit(1);
+        return list().thenApply(results -> results.isEmpty() ? null : results.get(0));
+    }
+
+    /**
+     * Counts the matching rows. Ordering and pagination, including {@link #after(Object)}, are ignored.
+     */
+    public CompletableFuture<Long> count() {
+        return runner.supply(() -> entityMapper.count(this));
+    }
+
+    /**
+     * Streams the matching objects to a callback instead of loading them into a list.
+     * The callback runs on a database thread, which holds a connection until the last row.
+     */
+    public CompletableFuture<Void> stream(int fetchSize, Consumer<? super T> consumer) {
+        return runner.supply(() -> {
+            entityMapper.query(this, fetchSize, consumer);
+            return null;
+        });
+    }
+
+    Class<T> getEntityClass() { return entityClass; }
+    List<Condition> getConditions() { return conditions; }
+    List<Order> getOrders() { return orders; }
+    int getLimit() { return limit; }
+    int getOffset() { return offset; }
+    T getAfter() { return after; }
+
+    /**
+     * A single predicate. A null operator means IN over the values.
+     */
+    static final class Condition {
+        private final String column;
+        private final Operator operator;
+        private final List<Object> values;
+
+        Condition(String column, Operator operator, List<Object> values) {
+            this.column = column;
+            this.operator = operator;
+            this.values = values;
+        }
+
+        String getColumn() { return column; }
+        Operator getOperator() { return operator; }
+        List<Object> getValues() { return values; }
+    }
+
+    static final class Order {
+        private final String column;
+        private final boolean descending;
+
+        Order(String column, boolean descending) {
+            this.column = column;
+            this.descending = descending;
+        }
+
+        String getColumn() { return column; }
+        boolean isDescending() { return descending; }
+    }
+}
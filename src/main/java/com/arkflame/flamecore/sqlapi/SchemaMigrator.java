@@ -0,0 +1,94 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies versioned migrations and records them in the schema version table.
+ * This class is not intended for direct use. It is managed by EntityMapper.
+ */
+class SchemaMigrator {
+    static final String VERSION_TABLE = "flamecore_schema_version";
+
+    private final Dialect dialect;
+
+    SchemaMigrator(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Applies the owner's migrations that are not recorded yet, in version order. Each one runs in its own
+     * transaction together with its version row, and a failure stops the run before later versions.
+     * @param migrations The migrations, sorted by version.
+     * @return The migrations that were applied.
+     */
+    List<Migration> apply(Connection conn, String owner, List<Migration> migrations) throws SQLException {
+        ensureVersionTable(conn);
+        Set<Integer> applied = appliedVersions(conn, owner);
+        List<Migration> newlyApplied = new ArrayList<>();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (Migration migration : migrations) {
+                if (applied.contains(migration.getVersion())) continue;
+                try {
+                    migration.apply(conn);
+                    recordVersion(conn, owner, migration);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw new SQLException("Schema migration " + migration.getVersion() + " (" + migration.getDescription() + ") failed.", e);
+                }
+                newlyApplied.add(migration);
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return newlyApplied;
+    }
+
+    private void ensureVersionTable(Connection conn) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS " + dialect.quote(VERSION_TABLE) + " (" +
+                dialect.quote("owner") + " " + dialect.getColumnType(String.class) + ", " +
+                dialect.quote("version") + " " + dialect.getColumnType(int.class) + ", " +
+                dialect.quote("description") + " " + dialect.getColumnType(String.class) + ", " +
+                dialect.quote("applied_at") + " " + dialect.getColumnType(long.class) + ", " +
+                "PRIMARY KEY (" + dialect.quote("owner") + ", " + dialect.quote("version") + "))";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private Set<Integer> appliedVersions(Connection conn, String owner) throws SQLException {
+        String sql = "SELECT " + dialect.quote("version") + " FROM " + dialect.quote(VERSION_TABLE) + " WHERE " + dialect.quote("owner") + " = ?";
+        Set<Integer> versions = new HashSet<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, owner);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    versions.add(rs.getInt(1));
+                }
+            }
+        }
+        return versions;
+    }
+
+    private void recordVersion(Connection conn, String owner, Migration migration) throws SQLException {
+        String sql = "INSERT INTO " + dialect.quote(VERSION_TABLE) + " (" + dialect.quote("owner") + ", " + dialect.quote("version") + ", " +
+                dialect.quote("description") + ", " + dialect.quote("applied_at") + ") VALUES (?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, owner);
+            ps.setInt(2, migration.getVersion());
+            ps.setString(3, migration.getDescription());
+            ps.setLong(4, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+    }
+}
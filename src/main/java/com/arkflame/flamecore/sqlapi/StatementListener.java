@@ -0,0 +1,19 @@
+package com.arkflame.flamecore.sqlapi;
+
+/**
+ * Receives the timing of every statement the engine runs, e.g. to collect latency metrics.
+ * It is called on the database thread that ran the statement, so it must be thread-safe and fast.
+ */
+@FunctionalInterface
+public interface StatementListener {
+    /**
+     * @param type The kind of work.
+     * @param entityClass The entity class the work was for.
+     * @param sql The statement text, or null for work made of several statements (saves and schema changes).
+     * @param rows The number of entities written or read.
+     * @param elapsedNanos The time from requesting a pooled connection until the work finished, so it includes pool waits. For streamed
+     *                     loads this includes the time spent in the callback.
+     * @param failed Whether the work threw an exception.
+     */
+    void onStatement(StatementType type, Class<?> entityClass, String sql, int rows, long elapsedNanos, boolean failed);
+}
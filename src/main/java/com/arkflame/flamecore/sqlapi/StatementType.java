@@ -0,0 +1,17 @@
+package com.arkflame.flamecore.sqlapi;
+
+/**
+ * The kind of database work reported to a {@link StatementListener}.
+ */
+public enum StatementType {
+    /** A batched upsert of one entity class, including its map tables. */
+    SAVE,
+    /** A key-value lookup, e.g. loadById, loadAllBy or a stream. */
+    LOAD,
+    /** A query builder select. */
+    QUERY,
+    /** A query builder count. */
+    COUNT,
+    /** Creating or updating the table, columns and indexes of one entity class. */
+    SCHEMA
+}
@@ -0,0 +1,14 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs database work off the calling thread, usually on a database API's executor.
+ */
+public interface TaskRunner {
+    /**
+     * Runs the task asynchronously. The future completes exceptionally if the task throws.
+     */
+    <R> CompletableFuture<R> supply(Callable<R> task);
+}
@@ -0,0 +1,249 @@
+package com.arkflame.flamecore.sqlapi;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map that records which keys were put or removed since it was last saved.
+ * EntityMapper installs it on @StoreAsTable fields so a save only writes the changed rows
+ * instead of rewriting the whole side table for the owner.
+ * This class is not intended for direct use. It is managed by EntityMapper.
+ */
+class TrackedMap<K, V> extends AbstractMap<K, V> {
+    private final Map<K, V> delegate;
+    private Object ownerId;
+    private boolean tracking;
+    private final Set<Object> changedKeys = new HashSet<>();
+    private final Set<Object> removedKeys = new HashSet<>();
+    private Set<Map.Entry<K, V>> entrySet;
+
+    TrackedMap(Map<K, V> delegate, Object ownerId) {
+        this.delegate = delegate;
+        this.ownerId = ownerId;
+        this.tracking = true;
+    }
+
+    /**
+     * Wraps a map whose stored rows are unknown. Its first save rewrites the side table in full.
+     */
+    TrackedMap(Map<K, V> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return true if the recorded changes are relative to the rows stored for this owner.
+     */
+    synchronized boolean isTrackingFor(Object ownerId) {
+        return tracking && Objects.equals(this.ownerId, ownerId);
+    }
+
+    /**
+     * Copies the current contents for a full rewrite and starts tracking for the given owner from that copy,
+     * so changes made while the copy is being written are recorded for the next save.
+     */
+    synchronized Snapshot snapshotAndTrack(Object ownerId) {
+        Snapshot snapshot = new Snapshot(new HashMap<>(delegate), this.ownerId, tracking, new HashSet<>(changedKeys), new HashSet<>(removedKeys));
+        this.ownerId = ownerId;
+        this.tracking = true;
+        changedKeys.clear();
+        removedKeys.clear();
+        return snapshot;
+    }
+
+    /**
+     * Goes back to the tracking state from before a snapshot after its rewrite failed. The changes recorded
+     * before the snapshot are recorded again, together with those made since.
+     */
+    synchronized void restore(Snapshot snapshot) {
+        this.ownerId = snapshot.previousOwnerId;
+        this.tracking = snapshot.previouslyTracking;
+        Set<Object> keys = new HashSet<>(snapshot.previousChangedKeys);
+        keys.addAll(snapshot.previousRemovedKeys);
+        for (Object key : keys) {
+            if (delegate.containsKey(key)) {
+                markChanged(key);
+            } else {
+                markRemoved(key);
+            }
+        }
+    }
+
+    /**
+     * Takes the changes recorded since the last save and starts recording afresh.
+     */
+    synchronized Changes drainChanges() {
+        Map<Object, Object> upserts = new HashMap<>();
+        for (Object key : changedKeys) {
+            upserts.put(key, delegate.get(key));
+        }
+        Changes changes = new Changes(upserts, new HashSet<>(removedKeys));
+        changedKeys.clear();
+        removedKeys.clear();
+        return changes;
+    }
+
+    /**
+     * Records drained changes again after a failed save, so the next save retries them.
+     */
+    synchronized void restore(Changes changes) {
+        Set<Object> keys = new HashSet<>(changes.upserts.keySet());
+        keys.addAll(changes.deletes);
+        for (Object key : keys) {
+            if (delegate.containsKey(key)) {
+                markChanged(key);
+            } else {
+                markRemoved(key);
+            }
+        }
+    }
+
+    private void markChanged(Object key) {
+        removedKeys.remove(key);
+        changedKeys.add(key);
+    }
+
+    private void markRemoved(Object key) {
+        changedKeys.remove(key);
+        removedKeys.add(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        markChanged(key);
+        return delegate.put(key, value);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (!delegate.containsKey(key)) return null;
+        markRemoved(key);
+        return delegate.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (K key : delegate.keySet()) {
+            markRemoved(key);
+        }
+        delegate.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        // keySet() and values() are derived from this view by AbstractMap, so their removals are tracked too.
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    Iterator<Map.Entry<K, V>> iterator = delegate.entrySet().iterator();
+                    return new Iterator<Map.Entry<K, V>>() {
+                        private Map.Entry<K, V> current;
+
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            current = iterator.next();
+                            return new TrackedEntry(current);
+                        }
+
+                        @Override
+                        public void remove() {
+                            synchronized (TrackedMap.this) {
+                                iterator.remove();
+                                markRemoved(current.getKey());
+                            }
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return TrackedMap.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private final class TrackedEntry extends SimpleEntry<K, V> {
+        private final Map.Entry<K, V> entry;
+
+        TrackedEntry(Map.Entry<K, V> entry) {
+            super(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public V setValue(V value) {
+            synchronized (TrackedMap.this) {
+                markChanged(entry.getKey());
+                super.setValue(value);
+                return entry.setValue(value);
+            }
+        }
+    }
+
+    /**
+     * The contents to write for a full rewrite, and the tracking state to go back to if it fails.
+     */
+    static final class Snapshot {
+        private final Map<Object, Object> contents;
+        private final Object previousOwnerId;
+        private final boolean previouslyTracking;
+        private final Set<Object> previousChangedKeys;
+        private final Set<Object> previousRemovedKeys;
+
+        Snapshot(Map<Object, Object> contents, Object previousOwnerId, boolean previouslyTracking,
+                 Set<Object> previousChangedKeys, Set<Object> previousRemovedKeys) {
+            this.contents = contents;
+            this.previousOwnerId = previousOwnerId;
+            this.previouslyTracking = previouslyTracking;
+            this.previousChangedKeys = previousChangedKeys;
+            this.previousRemovedKeys = previousRemovedKeys;
+        }
+
+        Map<Object, Object> getContents() { return contents; }
+    }
+
+    /**
+     * The rows to write for one save: keys to upsert with their values, and keys to delete.
+     */
+    static final class Changes {
+        private final Map<Object, Object> upserts;
+        private final Set<Object> deletes;
+
+        Changes(Map<Object, Object> upserts, Set<Object> deletes) {
+            this.upserts = upserts;
+            this.deletes = deletes;
+        }
+
+        Map<Object, Object> getUpserts() { return upserts; }
+        Set<Object> getDeletes() { return deletes; }
+        boolean isEmpty() { return upserts.isEmpty() && deletes.isEmpty(); }
+    }
+}
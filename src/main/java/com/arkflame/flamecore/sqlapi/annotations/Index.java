@@ -0,0 +1,17 @@
+package com.arkflame.flamecore.sqlapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Creates a secondary index on the column when the table's schema is synced.
+ * Fields that share an index name form one composite index, in declaration order.
+ * If no name is given, the index covers this column only.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.ANNOTATION_TYPE})
+public @interface Index {
+    String value() default "";
+}
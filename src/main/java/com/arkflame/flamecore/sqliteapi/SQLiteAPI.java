@@ -2,77 +2,233 @@ package com.arkflame.flamecore.sqliteapi;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.arkflame.flamecore.sqlapi.ColumnCodec;
+import com.arkflame.flamecore.sqlapi.DatabaseExecutor;
+import com.arkflame.flamecore.sqlapi.EntityMapper;
+import com.arkflame.flamecore.sqlapi.ExecutorStats;
+import com.arkflame.flamecore.sqlapi.Migration;
+import com.arkflame.flamecore.sqlapi.Query;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Main entry point for the SQLite Database API.
  * Handles connection pooling and provides high-level methods for data persistence with a local SQLite file.
  */
 public class SQLiteAPI {
+    // Rows fetched per step by the streaming methods unless a fetch size is given.
+    private static final int DEFAULT_FETCH_SIZE = 500;
+    // sqlite3_open_v2 flag, see https://www.sqlite.org/c3ref/c_open_autoproxy.html
+    private static final int SQLITE_OPEN_READONLY = 0x00000001;
+
     private final JavaPlugin plugin;
-    private final HikariDataSource dataSource;
+    private final HikariDataSource writeDataSource;
+    private final HikariDataSource readDataSource;
     private final EntityMapper entityMapper;
+    private final Map<Integer, Migration> migrations = new TreeMap<>();
+    private final DatabaseExecutor executor;
+    private final SQLiteWriter writer;
 
     public SQLiteAPI(JavaPlugin plugin, SQLiteConfig config) {
         this.plugin = plugin;
-        this.entityMapper = new EntityMapper(this);
-
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl("jdbc:sqlite:" + config.getDatabaseFile().getAbsolutePath());
-        
-        // Pool size of 1 is recommended for SQLite to prevent database locking issues
-        hikariConfig.setMaximumPoolSize(1);
-        hikariConfig.setConnectionTimeout(30000);
-        
+        String jdbcUrl = "jdbc:sqlite:" + config.getDatabaseFile().getAbsolutePath();
+
+        HikariConfig writeConfig = new HikariConfig();
+        writeConfig.setJdbcUrl(jdbcUrl);
+        writeConfig.setPoolName("FlameCore-SQLite-Write");
+        // SQLite allows a single writer, so all writes share one connection owned by the writer thread.
+        writeConfig.setMaximumPoolSize(1);
+        writeConfig.setConnectionTimeout(30000);
         // SQLite specific properties for performance
-        hikariConfig.addDataSourceProperty("journal_mode", "WAL");
-        hikariConfig.addDataSourceProperty("synchronous", "NORMAL");
+        writeConfig.addDataSourceProperty("journal_mode", "WAL");
+        writeConfig.addDataSourceProperty("synchronous", "NORMAL");
+        this.writeDataSource = new HikariDataSource(writeConfig);
+
+        // In WAL mode readers do not block the writer or each other, so reads get their own pool.
+        HikariConfig readConfig = new HikariConfig();
+        readConfig.setJdbcUrl(jdbcUrl);
+        readConfig.setPoolName("FlameCore-SQLite-Read");
+        readConfig.setMaximumPoolSize(config.getReadPoolSize());
+        readConfig.setConnectionTimeout(30000);
+        readConfig.addDataSourceProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        readConfig.setReadOnly(true);
+        this.readDataSource = new HikariDataSource(readConfig);
+        this.entityMapper = new EntityMapper(new SQLiteDialect(), writeDataSource, readDataSource);
+
+        this.executor = new DatabaseExecutor("FlameCore-SQLite-Read", config.getReadPoolSize(), config.getQueueCapacity(), config.getBackpressurePolicy());
+        this.writer = new SQLiteWriter(entityMapper, plugin.getLogger(), config.getWriteBatchSize(), config.getWriteBatchDelayMillis(),
+                config.getQueueCapacity(), config.getBackpressurePolicy());
+    }
+
+    /**
+     * Registers a versioned migration to be applied by {@link #migrate(Class[])}.
+     * @throws IllegalArgumentException if a migration with the same version is already registered.
+     */
+    public synchronized void addMigration(Migration migration) {
+        if (migrations.putIfAbsent(migration.getVersion(), migration) != null) {
+            throw new IllegalArgumentException("A migration with version " + migration.getVersion() + " is already registered.");
+        }
+    }
 
-        this.dataSource = new HikariDataSource(hikariConfig);
+    /**
+     * Stores fields, map keys and map values of a type with a codec, in a binary column.
+     * Call this before {@link #migrate(Class[])}. For example, {@code registerCodec(UUID.class, ColumnCodec.binaryUuid())}
+     * stores UUIDs in 16 bytes instead of 36 characters.
+     * @throws IllegalStateException if migrate was already called.
+     */
+    public <T> void registerCodec(Class<T> type, ColumnCodec<T> codec) {
+        entityMapper.registerCodec(type, codec);
     }
 
     /**
-     * Gets a connection from the pool. Internal use only.
+     * Brings the schema up to date. Call this once in onEnable, before saving any objects.
+     * Registered migrations that have not been applied yet run in version order, then the tables, columns
+     * and indexes of the given entity classes are created or updated. Saves never change the schema, so
+     * only classes passed here can be saved.
+     * @return A future that completes once the schema is up to date, or exceptionally if a migration failed.
      */
-    Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    public CompletableFuture<Void> migrate(Class<?>... entityClasses) {
+        List<Migration> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(migrations.values());
+        }
+        return supply(() -> {
+            for (Migration migration : entityMapper.migrate(plugin.getName(), pending, Arrays.asList(entityClasses))) {
+                plugin.getLogger().info("Applied schema migration " + migration.getVersion() + ": " + migration.getDescription());
+            }
+            return null;
+        });
     }
 
     /**
      * Saves an object to the database asynchronously.
+     * Saves are grouped with other queued saves into a single transaction by the writer thread.
+     * The future completes once that transaction has been committed, and completes exceptionally
+     * if this object could not be written. Its class must have been passed to {@link #migrate(Class[])}.
+     * Its @StoreAsTable map fields are replaced with change-tracking maps before this method returns,
+     * so re-read those fields instead of keeping references to the old maps.
      */
     public CompletableFuture<Void> save(Object object) {
-        return CompletableFuture.runAsync(() -> entityMapper.save(object),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        // Map fields are swapped for tracking maps here, on the caller's thread, never by the writer.
+        entityMapper.trackMaps(object);
+        return writer.save(object);
     }
 
     /**
      * Loads a single object from the database by its primary key.
+     * The future completes with null if there is no such row, and exceptionally if the query fails.
      */
     public <T> CompletableFuture<T> loadById(Class<T> clazz, Object primaryKeyValue) {
-        return CompletableFuture.supplyAsync(() -> entityMapper.loadById(clazz, primaryKeyValue),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        return supply(() -> entityMapper.loadById(clazz, primaryKeyValue));
     }
 
     /**
      * Loads a list of objects from the database that match a specific key-value pair.
+     * The future completes exceptionally if the query fails.
      */
     public <T> CompletableFuture<List<T>> loadAllBy(Class<T> clazz, String key, Object value) {
-        return CompletableFuture.supplyAsync(() -> entityMapper.loadAllBy(clazz, key, value),
-                run -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, run));
+        return supply(() -> entityMapper.loadAllBy(clazz, key, value));
+    }
+
+    /**
+     * Streams every object of a class to a callback instead of loading them into a list.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAll(Class<T> clazz, Consumer<? super T> consumer) {
+        return stream(clazz, null, null, DEFAULT_FETCH_SIZE, consumer);
+    }
+
+    /**
+     * Streams every object of a class to a callback, using the given fetch size.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAll(Class<T> clazz, int fetchSize, Consumer<? super T> consumer) {
+        return stream(clazz, null, null, fetchSize, consumer);
     }
 
     /**
-     * Shuts down the database connection pool. Call this in your plugin's onDisable.
+     * Streams the objects that match a specific key-value pair to a callback.
+     * @see #streamAllBy(Class, String, Object, int, Consumer)
+     */
+    public <T> CompletableFuture<Void> streamAllBy(Class<T> clazz, String key, Object value, Consumer<? super T> consumer) {
+        return stream(clazz, key, value, DEFAULT_FETCH_SIZE, consumer);
+    }
+
+    /**
+     * Streams the objects that match a specific key-value pair to a callback instead of loading them into a list.
+     * Rows are mapped one at a time as the query steps through the table, so a large table can be
+     * processed without holding all of it in memory. The callback runs on a read thread, and a read
+     * connection is held until the last row has been handled, so keep the callback short.
+     * @return A future that completes once every row was passed to the callback, or exceptionally if the
+     *         query or the callback failed.
+     */
+    public <T> CompletableFuture<Void> streamAllBy(Class<T> clazz, String key, Object value, int fetchSize, Consumer<? super T> consumer) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null. Use streamAll to stream every row.");
+        }
+        return stream(clazz, key, value, fetchSize, consumer);
+    }
+
+    private <T> CompletableFuture<Void> stream(Class<T> clazz, String key, Object value, int fetchSize, Consumer<? super T> consumer) {
+        return supply(() -> {
+            entityMapper.stream(clazz, key, value, fetchSize, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Starts a query builder for an entity class, for filtered, ordered or paginated loads.
+     */
+    public <T> Query<T> query(Class<T> clazz) {
+        return entityMapper.query(clazz, this::supply);
+    }
+
+    private <R> CompletableFuture<R> supply(Callable<R> task) {
+        return executor.supply(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return The read executor's queue depth, rejection count and latency counters.
+     */
+    public ExecutorStats getExecutorStats() {
+        return executor.stats();
+    }
+
+    /**
+     * @return The writer's queue depth and rejection count. Queue wait is measured per save,
+     * execution time per committed group.
+     */
+    public ExecutorStats getWriterStats() {
+        return writer.stats();
+    }
+
+    /**
+     * Waits for queued operations and shuts down the database connection pools. Call this in your plugin's onDisable.
      */
     public void shutdown() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+        executor.shutdown(30, TimeUnit.SECONDS);
+        writer.shutdown(30, TimeUnit.SECONDS);
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
+        if (writeDataSource != null && !writeDataSource.isClosed()) {
+            writeDataSource.close();
         }
     }
 }
\ No newline at end of file
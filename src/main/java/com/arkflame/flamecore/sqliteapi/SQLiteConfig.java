@@ -1,5 +1,6 @@
 package com.arkflame.flamecore.sqliteapi;
 
+import com.arkflame.flamecore.sqlapi.BackpressurePolicy;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
@@ -10,6 +11,11 @@ import java.io.IOException;
  */
 public final class SQLiteConfig {
     private final File databaseFile;
+    private final int queueCapacity;
+    private final BackpressurePolicy backpressurePolicy;
+    private final int readPoolSize;
+    private final int writeBatchSize;
+    private final long writeBatchDelayMillis;
 
     /**
      * Creates a configuration for an SQLite database.
@@ -17,6 +23,40 @@ public final class SQLiteConfig {
      * @param filename The name of the database file (e.g., "playerdata.db").
      */
     public SQLiteConfig(JavaPlugin plugin, String filename) {
+        this(plugin, filename, 1000, BackpressurePolicy.FAIL_FAST);
+    }
+
+    /**
+     * Creates a configuration for an SQLite database with custom executor limits.
+     * @param plugin The plugin instance, used to get the data folder.
+     * @param filename The name of the database file (e.g., "playerdata.db").
+     * @param queueCapacity The maximum number of database operations waiting for the database thread.
+     * @param backpressurePolicy What to do with new operations once the queue is full.
+     */
+    public SQLiteConfig(JavaPlugin plugin, String filename, int queueCapacity, BackpressurePolicy backpressurePolicy) {
+        this(plugin, filename, queueCapacity, backpressurePolicy, 4, 100, 10);
+    }
+
+    /**
+     * Creates a configuration for an SQLite database with custom executor and write batching limits.
+     * @param plugin The plugin instance, used to get the data folder.
+     * @param filename The name of the database file (e.g., "playerdata.db").
+     * @param queueCapacity The maximum number of queued reads, and separately of queued writes.
+     * @param backpressurePolicy What to do with new operations once a queue is full.
+     * @param readPoolSize The number of read-only connections (and reader threads).
+     * @param writeBatchSize The maximum number of saves committed in one transaction.
+     * @param writeBatchDelayMillis How long the writer waits for more saves before committing a group.
+     */
+    public SQLiteConfig(JavaPlugin plugin, String filename, int queueCapacity, BackpressurePolicy backpressurePolicy,
+                        int readPoolSize, int writeBatchSize, long writeBatchDelayMillis) {
+        if (queueCapacity <= 0 || readPoolSize <= 0 || writeBatchSize <= 0 || writeBatchDelayMillis < 0) {
+            throw new IllegalArgumentException("Queue capacity, read pool size and write batch size must be positive.");
+        }
+        this.queueCapacity = queueCapacity;
+        this.backpressurePolicy = backpressurePolicy;
+        this.readPoolSize = readPoolSize;
+        this.writeBatchSize = writeBatchSize;
+        this.writeBatchDelayMillis = writeBatchDelayMillis;
         File dataFolder = plugin.getDataFolder();
         if (!dataFolder.exists()) {
             dataFolder.mkdirs();
@@ -34,4 +74,24 @@ public final class SQLiteConfig {
     public File getDatabaseFile() {
         return databaseFile;
     }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public int getReadPoolSize() {
+        return readPoolSize;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public long getWriteBatchDelayMillis() {
+        return writeBatchDelayMillis;
+    }
 }
\ No newline at end of file
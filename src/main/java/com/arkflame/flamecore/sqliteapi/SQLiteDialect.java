@@ -0,0 +1,63 @@
+package com.arkflame.flamecore.sqliteapi;
+
+import com.arkflame.flamecore.sqlapi.Dialect;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The SQLite dialect for the shared ORM engine.
+ * This class is not intended for direct use. It is managed by SQLiteAPI.
+ */
+class SQLiteDialect implements Dialect {
+    @Override
+    public String quote(String identifier) {
+        // Left unquoted: SQLite reads an unknown double-quoted name as a string literal, which would hide typos.
+        return identifier;
+    }
+
+    @Override
+    public String getColumnType(Class<?> type) {
+        if (type == int.class || type == Integer.class) return "INTEGER";
+        if (type == long.class || type == Long.class) return "INTEGER";
+        if (type == short.class || type == Short.class || type == byte.class || type == Byte.class) return "INTEGER";
+        if (type == boolean.class || type == Boolean.class) return "INTEGER";
+        if (type == double.class || type == Double.class || type == float.class || type == Float.class) return "REAL";
+        if (type == String.class) return "TEXT";
+        if (type == java.util.UUID.class) return "TEXT";
+        return "TEXT";
+    }
+
+    @Override
+    public String getBinaryColumnType(int fixedLength) {
+        return "BLOB";
+    }
+
+    @Override
+    public boolean isIndexable(String columnType) {
+        return true;
+    }
+
+    @Override
+    public String upsert(String table, String primaryKey, List<String> columns) {
+        String columnList = columns.stream().map(c -> c + ", ").collect(Collectors.joining()) + primaryKey;
+        String placeholders = columns.stream().map(c -> "?, ").collect(Collectors.joining()) + "?";
+        // Upsert syntax needs SQLite 3.24 or newer; the bundled sqlite-jdbc ships 3.42.
+        String conflict = columns.isEmpty()
+                ? "DO NOTHING"
+                : "DO UPDATE SET " + columns.stream().map(c -> c + " = excluded." + c).collect(Collectors.joining(", "));
+        return "INSERT INTO " + table + " (" + columnList + ") VALUES (" + placeholders + ") ON CONFLICT(" + primaryKey + ") " + conflict;
+    }
+
+    @Override
+    public String getUnlimited() {
+        // A negative limit means no limit.
+        return "-1";
+    }
+
+    @Override
+    public int getMaxInParameters() {
+        // Stays well below SQLite's 999 parameter limit.
+        return 500;
+    }
+}
@@ -0,0 +1,209 @@
+package com.arkflame.flamecore.sqliteapi;
+
+import com.arkflame.flamecore.sqlapi.BackpressurePolicy;
+import com.arkflame.flamecore.sqlapi.EntityMapper;
+import com.arkflame.flamecore.sqlapi.ExecutorStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The single writer thread for an SQLite database.
+ * Saves are queued and drained in groups: the writer waits at most {@code maxBatchDelayMillis}
+ * after the first queued save, or until {@code maxBatchSize} saves are queued, and then writes
+ * the whole group in one transaction. SQLite only allows one writer at a time, so this turns
+ * one commit (and fsync) per save into one per group.
+ * This class is not intended for direct use. It is managed by SQLiteAPI.
+ */
+class SQLiteWriter {
+    private final EntityMapper entityMapper;
+    private final Logger logger;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final int queueCapacity;
+    private final BackpressurePolicy policy;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+    private final LongAdder batches = new LongAdder();
+
+    SQLiteWriter(EntityMapper entityMapper, Logger logger, int maxBatchSize, long maxBatchDelayMillis, int queueCapacity, BackpressurePolicy policy) {
+        this.entityMapper = entityMapper;
+        this.logger = logger;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::runLoop, "FlameCore-SQLite-Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an entity to be saved. The future completes when its group has been committed.
+     */
+    CompletableFuture<Void> save(Object entity) {
+        PendingWrite pending = new PendingWrite(entity);
+        if (!running) {
+            return reject(pending, "SQLite writer has been shut down.");
+        }
+        switch (policy) {
+            case BLOCK:
+                try {
+                    // Waits in steps, so a shutdown while waiting rejects the save instead of blocking forever.
+                    while (!queue.offer(pending, 100, TimeUnit.MILLISECONDS)) {
+                        if (!running) {
+                            return reject(pending, "SQLite writer has been shut down.");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return reject(pending, "Interrupted while waiting for the SQLite write queue.");
+                }
+                break;
+            case CALLER_RUNS:
+                if (!queue.offer(pending)) {
+                    // The write pool only has one connection, so this waits for the writer's current group.
+                    write(Collections.singletonList(pending));
+                }
+                break;
+            case FAIL_FAST:
+            default:
+                if (!queue.offer(pending)) {
+                    return reject(pending, "SQLite write queue is full.");
+                }
+                break;
+        }
+        // A shutdown while queueing may have already drained the queue, leaving nothing to write this save.
+        if (!running && queue.remove(pending)) {
+            return reject(pending, "SQLite writer has been shut down.");
+        }
+        return pending.future;
+    }
+
+    ExecutorStats stats() {
+        long count = completed.sum();
+        long batchCount = batches.sum();
+        return new ExecutorStats(queue.size(), queueCapacity, thread.isAlive() ? 1 : 0, 1, count, rejected.sum(),
+                count == 0 ? 0.0 : nanosToMillis(totalQueueNanos.get()) / count, nanosToMillis(maxQueueNanos.get()),
+                batchCount == 0 ? 0.0 : nanosToMillis(totalBatchNanos.get()) / batchCount, nanosToMillis(maxBatchNanos.get()));
+    }
+
+    /**
+     * Stops accepting saves and waits for the writer to commit everything still queued.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        try {
+            thread.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            thread.interrupt();
+        }
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            reject(pending, "SQLite writer was shut down before the entity could be written.");
+        }
+    }
+
+    private void runLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // Forced shutdown: fail what this batch was holding.
+                for (PendingWrite pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        long startedAt = System.nanoTime();
+        List<Object> entities = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            entities.add(pending.entity);
+            long queueNanos = startedAt - pending.queuedAt;
+            totalQueueNanos.addAndGet(queueNanos);
+            maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+        }
+        try {
+            entityMapper.saveAll(entities);
+            for (PendingWrite pending : batch) {
+                pending.future.complete(null);
+            }
+        } catch (Exception batchError) {
+            // One bad entity must not fail the whole group, so retry each save in its own transaction.
+            for (PendingWrite pending : batch) {
+                try {
+                    entityMapper.saveAll(Collections.singletonList(pending.entity));
+                    pending.future.complete(null);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Failed to save " + pending.entity.getClass().getSimpleName() + " to SQLite.", e);
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        } finally {
+            long batchNanos = System.nanoTime() - startedAt;
+            completed.add(batch.size());
+            batches.increment();
+            totalBatchNanos.addAndGet(batchNanos);
+            maxBatchNanos.accumulateAndGet(batchNanos, Math::max);
+        }
+    }
+
+    private CompletableFuture<Void> reject(PendingWrite pending, String message) {
+        rejected.increment();
+        pending.future.completeExceptionally(new RejectedExecutionException(message));
+        return pending.future;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class PendingWrite {
+        private final Object entity;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(Object entity) {
+            this.entity = entity;
+        }
+    }
+}
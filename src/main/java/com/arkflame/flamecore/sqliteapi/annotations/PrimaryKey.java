@@ -6,5 +6,6 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 @Retention(RetentionPolicy.RUNTIME)
+@com.arkflame.flamecore.sqlapi.annotations.PrimaryKey
 @Target(ElementType.FIELD)
 public @interface PrimaryKey {}
\ No newline at end of file